@@ -0,0 +1,102 @@
+package application;
+
+import application.listeners.DuplicatesButtonHandler;
+import application.listeners.DuplicatesListener;
+import util.DuplicateFinder;
+import util.MediaItem;
+import util.MediaTable;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.util.List;
+
+public class DuplicatesWindow extends UserInterface {
+    private final JLabel progressLabel; //Label showing the progress of the search
+    private final JButton cancelBtn; //Button to stop the search
+    private final DefaultTableModel resultsModel; //Table model listing the duplicates found
+    private DuplicateFinder finder; //The search currently being shown, null if no search has been started
+
+    /**
+     * Creates the window showing the duplicate media in the library
+     * @param dashboard the media library dashboard that created this instance
+     */
+    public DuplicatesWindow(MediaDashboard dashboard) {
+        super(dashboard.getFileMan());
+
+        //Label showing the progress and a button to cancel the search
+        this.progressLabel = new JLabel();
+        this.cancelBtn = new JButton("Cancel search");
+        this.cancelBtn.addActionListener(new DuplicatesButtonHandler(this));
+        JPanel progressPanel = new JPanel();
+        progressPanel.add(this.progressLabel);
+        progressPanel.add(this.cancelBtn);
+
+        //Table listing every duplicate, items with the same group number have the same content
+        String[] columnNames = { "Group", "Name", "Size (MB)", "Path" };
+        this.resultsModel = new DefaultTableModel(columnNames, 0);
+        JScrollPane resultsPane = new JScrollPane(new MediaTable(this.resultsModel));
+
+        //Progress along the top and the results filling the rest of the window
+        this.getFrame().getContentPane().setLayout(new BorderLayout());
+        this.getContentPane().add(progressPanel, BorderLayout.NORTH);
+        this.getContentPane().add(resultsPane, BorderLayout.CENTER);
+
+        this.buildGUI("Duplicate media", false);
+        //Just hide the JFrame so we don't need to make a new one each time the window is opened.
+        this.getFrame().setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
+    }
+
+    /**
+     * Starts searching the library for duplicates and shows the window with its progress
+     */
+    public void start() {
+        //Stop any search still running from the last time the window was open
+        this.cancel();
+        this.resultsModel.setRowCount(0);
+        this.progressLabel.setText("Searching for duplicates...");
+        this.cancelBtn.setEnabled(true);
+
+        this.finder = new DuplicateFinder(this.getFileMan().getMedia(), new DuplicatesListener(this));
+        this.finder.execute();
+        this.getFrame().setVisible(true);
+    }
+
+    /**
+     * Updates the progress shown in the window
+     * @param stage description of what is currently being done
+     * @param done number of files finished in this stage
+     * @param total number of files in this stage
+     */
+    public void setProgress(String stage, int done, int total) {
+        this.progressLabel.setText(stage + "... " + done + " of " + total);
+    }
+
+    /**
+     * Stops the search if it is still running
+     */
+    public void cancel() {
+        if (this.finder != null) this.finder.cancel(true);
+    }
+
+    /**
+     * Shows the duplicates found in the results table
+     * @param groups groups of media items with identical content
+     * @param cancelled true if the search was cancelled before it finished
+     */
+    public void showResults(List<List<MediaItem>> groups, boolean cancelled) {
+        this.cancelBtn.setEnabled(false);
+        if (cancelled) {
+            this.progressLabel.setText("Search cancelled.");
+            return;
+        }
+
+        //Add a row for each item, numbering the groups so items with the same content are next to each other
+        for (int i = 0; i < groups.size(); i++) {
+            for (MediaItem item : groups.get(i)) {
+                this.resultsModel.addRow(new Object[]{ i + 1, item.getName(), item.getEntry(1), item.getPath() });
+            }
+        }
+        this.progressLabel.setText(groups.size() + " groups of duplicate media found.");
+    }
+}
@@ -1,25 +1,41 @@
 package application;
 
 import application.listeners.DashboardButtonHandler;
+import application.listeners.HeaderListener;
+import application.listeners.LoadListener;
+import application.listeners.MediaChangeListener;
 import application.listeners.MenuHandler;
+import application.listeners.ScrollListener;
+import application.listeners.SearchListener;
 import util.FileManager;
 import util.MediaItem;
 import application.listeners.WindowListener;
 import util.MediaTable;
+import util.MediaTableModel;
+import util.ThumbnailCache;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class MediaDashboard extends UserInterface {
     private final MediaTable table; //Table displaying all the currently managed media files
+    private final JLabel status; //Label in the toolbar showing the state of the library
+    private final MediaTableModel tableModel; //Model reading the rows of the table from the displayed media
     private int playlistsLoaded; //Total number of playlists currently loaded
     private String playlist; //The current playlist being displayed, "none" if no playlist selected
+    private String search; //Text the displayed media is filtered by, empty if the table isn't being searched
+    private List<MediaItem> results; //Media shown while searching, kept up to date as media is added or removed
 
     public MediaDashboard() {
         //Initialising the class properties
         super(new FileManager());
         this.playlist = "none";
+        this.search = "";
         this.playlistsLoaded = 0;
 
         //Create action listeners for interactable elements
@@ -35,6 +51,12 @@ public class MediaDashboard extends UserInterface {
         JMenuItem playlistNew = new JMenuItem("New playlist");
         JMenuItem playlistEdit = new JMenuItem("Edit playlist");
         JMenuItem playlistClose = new JMenuItem("Close playlist");
+        JMenuItem playlistCombine = new JMenuItem("Combine playlists");
+        JMenu toolsMenu = new JMenu("Tools");
+        JMenuItem toolsDuplicates = new JMenuItem("Find duplicates");
+        JMenuItem toolsUnwatch = new JMenuItem("Stop watching folders");
+        JMenuItem toolsAutosave = new JMenuItem("Autosave settings");
+        JMenuItem toolsProbes = new JMenuItem("Probe statistics");
 
         //Attaching the menu elements to the frame.
         fileMenu.add(fileOpen);
@@ -43,8 +65,14 @@ public class MediaDashboard extends UserInterface {
         playlistMenu.add(playlistNew);
         playlistMenu.add(playlistEdit);
         playlistMenu.add(playlistClose);
+        playlistMenu.add(playlistCombine);
         playlistMenu.addSeparator();
         menuBar.add(playlistMenu);
+        toolsMenu.add(toolsDuplicates);
+        toolsMenu.add(toolsUnwatch);
+        toolsMenu.add(toolsAutosave);
+        toolsMenu.add(toolsProbes);
+        menuBar.add(toolsMenu);
         this.getFrame().setJMenuBar(menuBar);
 
         //Declare and initialise toolbar and buttons
@@ -59,12 +87,32 @@ public class MediaDashboard extends UserInterface {
         toolBar.add(delBtn);
         toolBar.add(scanBtn);
         toolBar.add(openBtn);
+        toolBar.addSeparator();
+        toolBar.add(this.status = new JLabel());
         this.getContentPane().add(toolBar);
         toolBar.setFloatable(false); //Stops toolbar from being dragged
 
+        //Search box above the table, the rows are filtered as the user types
+        JPanel searchPanel = new JPanel();
+        JTextField searchField = new JTextField(30);
+        searchPanel.add(new JLabel("Search:"));
+        searchPanel.add(searchField);
+        searchField.getDocument().addDocumentListener(new SearchListener(this, searchField));
+        this.getContentPane().add(searchPanel);
+
         //Creates a scroll pane so the table headings are visible
         JScrollPane scrollPane = new JScrollPane();
-        scrollPane.setViewportView(this.table = new MediaTable());
+        this.tableModel = new MediaTableModel();
+        scrollPane.setViewportView(this.table = new MediaTable(this.tableModel));
+        this.table.getTableHeader().addMouseListener(new HeaderListener(this)); //Clicking a heading sorts by it
+        //Any number of rows can be selected so they can be removed together
+        this.table.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        //Rows tall enough for the thumbnails, with the thumbnail column shown first
+        this.table.setRowHeight(ThumbnailCache.SIZE + 2);
+        this.table.moveColumn(MediaTableModel.THUMBNAIL_COLUMN, 0);
+        this.table.getColumnModel().getColumn(0).setMaxWidth(ThumbnailCache.SIZE + 8);
+        //Stop making thumbnails for rows that have been scrolled past
+        scrollPane.getViewport().addChangeListener(new ScrollListener(this));
         this.getContentPane().add(scrollPane); //Adds scroll pane to the GUI
         this.populateTable(); //Fill the table with any media currently saved
 
@@ -80,6 +128,11 @@ public class MediaDashboard extends UserInterface {
         playlistNew.addActionListener(menuHandler);
         playlistEdit.addActionListener(menuHandler);
         playlistClose.addActionListener(menuHandler);
+        playlistCombine.addActionListener(menuHandler);
+        toolsDuplicates.addActionListener(menuHandler);
+        toolsUnwatch.addActionListener(menuHandler);
+        toolsAutosave.addActionListener(menuHandler);
+        toolsProbes.addActionListener(menuHandler);
         this.genPlaylists(); //Creates the menu items for each playlist and adds action listeners.
 
         //Set the frames properties and make it visible
@@ -87,6 +140,162 @@ public class MediaDashboard extends UserInterface {
         this.getFrame().setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
         //Add window listener for managing the close window event
         this.getFrame().addWindowListener(new WindowListener(this.getFileMan()));
+        //Apply every change to the media straight to the table rather than refilling it
+        this.getFileMan().addMediaListener(new MediaChangeListener(this));
+
+        //Start loading the library that was open last time, if it can't be read then just show an empty library
+        File lastLibrary = this.getFileMan().getLastLibrary();
+        if (lastLibrary != null) this.openLibrary(lastLibrary, false);
+    }
+
+    /**
+     * Starts loading a library file in the background, rows are shown in the table as they are read
+     * @param file the media library file to open
+     * @param showErrors true to display an error message if the file can't be read
+     */
+    public void openLibrary(File file, boolean showErrors) {
+        this.getFileMan().load(file, new LoadListener(this, showErrors));
+        //Clear the table and playlist menu of the previous library, the new rows get added as they load
+        this.populateTable();
+        this.genPlaylists();
+        this.setStatus("Loading " + file.getName() + "...");
+    }
+
+    /**
+     * Adds rows that have been added to the end of the media list to the table
+     * @param first index in the media list of the first new row
+     * @param last index in the media list of the last new row
+     */
+    public void addRows(int first, int last) {
+        //The rows only belong in the table if it is showing all media
+        if (!this.playlist.equals("none")) return;
+        if (!this.isSearching()) {
+            this.tableModel.fireTableRowsInserted(first, last);
+            return;
+        }
+
+        //Only the new media is checked against the search, it goes on the end of the results like the media list
+        int firstRow = this.results.size();
+        List<MediaItem> media = this.getFileMan().getMedia();
+        for (int i = first; i <= last; i++) {
+            if (this.getFileMan().matchesSearch(media.get(i), this.search)) this.results.add(media.get(i));
+        }
+        if (this.results.size() > firstRow) this.tableModel.fireTableRowsInserted(firstRow, this.results.size() - 1);
+    }
+
+    /**
+     * Removes rows from the table that have been removed from the media list
+     * @param first index the first removed row had in the media list
+     * @param last index the last removed row had in the media list
+     */
+    public void removeRows(int first, int last) {
+        if (this.isSearching()) {
+            this.removeResults();
+            return;
+        }
+        //Removals from a playlist being shown are handled by removePlaylistRows
+        if (!this.playlist.equals("none")) return;
+        this.tableModel.fireTableRowsDeleted(first, last);
+    }
+
+    /**
+     * Removes many rows from the table at once that have been removed from the media list
+     * @param indexes the indexes the removed rows had in the media list, sorted
+     */
+    public void removeRows(int[] indexes) {
+        if (indexes.length == 0) return;
+        //Rows next to each other can still be removed without losing the selection of the rest of the table
+        if (indexes[indexes.length - 1] - indexes[0] == indexes.length - 1) {
+            this.removeRows(indexes[0], indexes[indexes.length - 1]);
+            return;
+        }
+        if (this.isSearching()) {
+            this.removeResults();
+            return;
+        }
+        if (!this.playlist.equals("none")) return;
+        //Scattered rows are redrawn in a single update rather than one for every row
+        this.tableModel.fireTableDataChanged();
+    }
+
+    /**
+     * Takes media that has been removed from the library out of the search results in one pass, and removes
+     * just their rows from the table so the selection of the rest is kept
+     */
+    private void removeResults() {
+        int[] rows = new int[this.results.size()];
+        int count = 0;
+        int kept = 0;
+        for (int i = 0; i < this.results.size(); i++) {
+            MediaItem item = this.results.get(i);
+            if (this.getFileMan().isInLibrary(item)) this.results.set(kept++, item);
+            else rows[count++] = i;
+        }
+        this.results.subList(kept, this.results.size()).clear();
+        this.fireRowsDeleted(rows, count);
+    }
+
+    /**
+     * Tells the table rows have been deleted, from the last run of rows to the first so the rows still to
+     * come don't move
+     * @param rows the deleted rows, sorted
+     * @param count the number of rows in the array that were deleted
+     */
+    private void fireRowsDeleted(int[] rows, int count) {
+        int end = count - 1;
+        while (end >= 0) {
+            int start = end;
+            while (start > 0 && rows[start - 1] == rows[start] - 1) start--;
+            this.tableModel.fireTableRowsDeleted(rows[start], rows[end]);
+            end = start - 1;
+        }
+    }
+
+    /**
+     * Refreshes rows in the table whose metadata has changed
+     * @param first index in the media list of the first updated row
+     * @param last index in the media list of the last updated row
+     */
+    public void updateRows(int first, int last) {
+        //The search only looks at paths, which never change, so the results just need redrawing
+        if (this.isSearching()) {
+            this.tableModel.fireTableRowsUpdated(0, this.tableModel.getRowCount() - 1);
+            return;
+        }
+        if (!this.playlist.equals("none")) return;
+        this.tableModel.fireTableRowsUpdated(first, last);
+    }
+
+    /**
+     * Removes rows from the table if it is showing the playlist they were removed from. The playlist is closed
+     * up here, so only the playlist being shown is looked through
+     * @param playlist name of the playlist the media was removed from
+     */
+    public void removePlaylistRows(String playlist) {
+        if (!this.playlist.equals(playlist)) return;
+        //The removed rows have already been taken out of the search results, the playlist is closed up when read
+        if (this.isSearching()) return;
+        int[] rows = this.getFileMan().compactPlaylist(playlist);
+        this.fireRowsDeleted(rows, rows.length);
+    }
+
+    /**
+     * Reloads the table if it is showing a playlist that has been replaced or removed
+     * @param playlist name of the playlist that changed
+     */
+    public void refreshPlaylist(String playlist) {
+        if (!this.playlist.equals(playlist)) return;
+        //If the playlist no longer exists then go back to showing all media
+        if (this.getFileMan().getPlaylist(playlist) == null) this.populateTable();
+        else this.populateTable(playlist);
+    }
+
+    /**
+     * Sets the text of the status label in the toolbar
+     * @param text the status to show
+     */
+    public void setStatus(String text) {
+        this.status.setText(text);
     }
 
     /**
@@ -107,16 +316,23 @@ public class MediaDashboard extends UserInterface {
         if (playlist.equals("none")) media = this.getFileMan().getMedia();
         else media = this.getFileMan().getPlaylist(playlist);
 
-        //Create a table model with the appropriate column names
-        Object[] columnNames = { "Name", "Size (MB)", "Media type", "Resolution", "Audio Length" };
-        DefaultTableModel tableModel = new DefaultTableModel(columnNames, 0);
-        //Cycle through each media item and use the getEntry function to get it as a table entry
-        for (MediaItem item : media) {
-            tableModel.addRow(item.getEntry());
+        if (this.isSearching()) {
+            List<MediaItem> results = this.getFileMan().search(this.search);
+            if (playlist.equals("none")) media = results;
+            else {
+                //Keep the playlist order and only show the media that matched
+                Set<MediaItem> matches = new HashSet<>(results);
+                List<MediaItem> filtered = new ArrayList<>();
+                for (MediaItem item : media) {
+                    if (matches.contains(item)) filtered.add(item);
+                }
+                media = filtered;
+            }
         }
 
-        //Set the created model to the table to display the media
-        this.table.setModel(tableModel);
+        //Point the table model at the media, cells are read from the list when they are drawn
+        this.results = this.isSearching() ? media : null;
+        this.tableModel.setMedia(media);
     }
 
     /**
@@ -132,7 +348,7 @@ public class MediaDashboard extends UserInterface {
 
         //Remove all the already loaded playlists
         for (int i = 0; i < this.playlistsLoaded; i++) {
-            menu.remove(4); //All playlists will be in position 4 as once 4th is deleted 5th becomes 4th
+            menu.remove(5); //All playlists will be in position 5 as once 5th is deleted 6th becomes 5th
         }
         this.playlistsLoaded = 0;
         //Set the number of loaded playlists to 0
@@ -156,10 +372,72 @@ public class MediaDashboard extends UserInterface {
     }
 
     /**
-     * Gets the index of the row that is currently selected in the table
-     * @return the row index of the currently selected row, -1 means no row selected
+     * Sorts the table by a column, sorting by the same column again swaps between ascending and descending
+     * @param column index of the column in the table
+     */
+    public void sortBy(int column) {
+        this.tableModel.sortBy(this.table.convertColumnIndexToModel(column));
+        //Mark the sorted column heading with the direction it is sorted in
+        for (int i = 0; i < this.table.getColumnCount(); i++) {
+            int modelColumn = this.table.convertColumnIndexToModel(i);
+            String heading = this.tableModel.getColumnName(modelColumn);
+            if (modelColumn == this.tableModel.getSortColumn()) heading += this.tableModel.isAscending() ? " (asc)" : " (desc)";
+            this.table.getColumnModel().getColumn(i).setHeaderValue(heading);
+        }
+        this.table.getTableHeader().repaint();
+    }
+
+    /**
+     * Cancels the thumbnails still being made for rows that aren't on screen anymore
+     */
+    public void visibleRowsChanged() {
+        Rectangle visible = this.table.getVisibleRect();
+        int first = this.table.rowAtPoint(visible.getLocation());
+        int last = this.table.rowAtPoint(new Point(visible.x, visible.y + visible.height - 1));
+        if (first == -1) first = 0;
+        if (last == -1) last = this.table.getRowCount() - 1;
+
+        List<MediaItem> shown = new ArrayList<>();
+        for (int row = first; row <= last; row++) {
+            shown.add(this.tableModel.getItem(this.table.convertRowIndexToModel(row)));
+        }
+        this.tableModel.getThumbnails().retain(shown);
+    }
+
+    /**
+     * Filters the table to the media whose path contains some text
+     * @param text the text to search for, empty to show all the media again
+     */
+    public void search(String text) {
+        this.search = text;
+        this.populateTable(this.playlist);
+    }
+
+    /**
+     * @return true if the table is being filtered by a search
+     */
+    private boolean isSearching() {
+        return !this.search.isEmpty();
+    }
+
+    /**
+     * Gets the media item in the row that is currently selected in the table
+     * @return the media item in the selected row, null means no row selected
+     */
+    public MediaItem getSelectedItem() {
+        int row = this.table.getSelectedRow();
+        if (row == -1) return null;
+        return this.tableModel.getItem(row);
+    }
+
+    /**
+     * Gets the media items in every row that is currently selected in the table
+     * @return the selected media items, empty if no rows are selected
      */
-    public int getRowIndex() {
-        return this.table.getSelectedRow();
+    public List<MediaItem> getSelectedItems() {
+        int[] rows = this.table.getSelectedRows();
+        List<MediaItem> items = new ArrayList<>(rows.length);
+        for (int row : rows) items.add(this.tableModel.getItem(row));
+        return items;
     }
 }
@@ -4,21 +4,19 @@ import application.listeners.MouseListener;
 import application.listeners.PlaylistButtonHandler;
 import util.MediaItem;
 import util.MediaTable;
+import util.PlaylistEditorModel;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
-import java.util.ArrayList;
 import java.util.List;
 
 public class PlaylistEditor extends UserInterface{
     private final MediaDashboard dashboard; //The main media library dashboard
     private final JTextField nameField; //The field for editing the playlist name
-    private final DefaultTableModel playlistModel; //Table model for the playlist table
-    private final DefaultTableModel mediaModel; //Table model for the media table
+    private final PlaylistEditorModel model; //The media in the playlist and the rest of the library, shared by both tables
+    private final MediaTable playlistTable; //Table of the media in the playlist
+    private final MediaTable mediaTable; //Table of the media not in the playlist
     private String playlistKey; //The current key for the hashmap containing playlists
-    private List<MediaItem> otherMedia; //Media not part of the current playlist
-    private List<MediaItem> playlistMedia; //Media that is a part of the current playlist
 
     /**
      * Constructor for the PlaylistEditor class
@@ -39,11 +37,8 @@ public class PlaylistEditor extends UserInterface{
         namePanel.add(nameLabel);
         namePanel.add(this.nameField);
 
-        //Save the table models as class properties so that rows can be easily added later on
-        String[] columnNames = {"Playlist"};
-        this.playlistModel = new DefaultTableModel(columnNames, 0);
-        columnNames[0] = "Other Media";
-        this.mediaModel = new DefaultTableModel(columnNames, 0);
+        //Both tables read their rows from the same model, so moving media between them only updates the rows moved
+        this.model = new PlaylistEditorModel();
 
         //Create the preferred dimensions of the tables so two can fit beside each other
         Dimension prefSize = new Dimension(250, 400);
@@ -52,31 +47,37 @@ public class PlaylistEditor extends UserInterface{
         //Create the playlist table and put it in a scroll pane so the column title is visible
         JScrollPane playlistPane = new JScrollPane();
         playlistPane.setPreferredSize(prefSize);
-        MediaTable playlistTable = new MediaTable(this.playlistModel);
-        playlistTable.addMouseListener(mouseListener); //Makes sure to add the listener
-        playlistPane.setViewportView(playlistTable);
+        this.playlistTable = new MediaTable(this.model.getPlaylistTable());
+        this.playlistTable.addMouseListener(mouseListener); //Makes sure to add the listener
+        playlistPane.setViewportView(this.playlistTable);
         //Same for the media table
         JScrollPane mediaPane = new JScrollPane();
         mediaPane.setPreferredSize(prefSize);
-        MediaTable mediaTable = new MediaTable(this.mediaModel);
-        mediaTable.addMouseListener(mouseListener);
-        mediaPane.setViewportView(mediaTable);
+        this.mediaTable = new MediaTable(this.model.getOtherTable());
+        this.mediaTable.addMouseListener(mouseListener);
+        mediaPane.setViewportView(this.mediaTable);
 
         //Add the scroll panes to a panel for formatting
         JPanel tablePanel = new JPanel();
         tablePanel.add(playlistPane);
         tablePanel.add(mediaPane);
 
-        //Add the buttons for saving or deleting the playlists to a panel for formatting
+        //Add the buttons for moving the selected rows, saving or deleting the playlists to a panel for formatting
+        JButton removeBtn = new JButton("Remove selected");
+        JButton addBtn = new JButton("Add selected");
         JButton delBtn = new JButton("Delete playlist");
         JButton saveBtn = new JButton("Save playlist");
         JPanel savePanel = new JPanel();
+        savePanel.add(removeBtn);
+        savePanel.add(addBtn);
         savePanel.add(delBtn);
         savePanel.add(saveBtn);
 
         //Create a button handler for this GUI
         PlaylistButtonHandler buttonHandler = new PlaylistButtonHandler(this);
         //Add the button handler to each of the buttons
+        removeBtn.addActionListener(buttonHandler);
+        addBtn.addActionListener(buttonHandler);
         delBtn.addActionListener(buttonHandler);
         saveBtn.addActionListener(buttonHandler);
 
@@ -98,39 +99,43 @@ public class PlaylistEditor extends UserInterface{
     public void open(String playlistName) {
         this.playlistKey = playlistName; //Set the current playlist key as the initial playlist name
 
-        //Get the playlist specified, if it doesn't exist then make a new list for the media
+        //Get the playlist specified, if it doesn't exist then start with an empty playlist
         List<MediaItem> playlist = this.getFileMan().getPlaylist(playlistName);
-        if (playlist == null) this.playlistMedia = new ArrayList<>();
-        else this.playlistMedia = new ArrayList<>(this.getFileMan().getPlaylist(playlistName));
+        if (playlist == null) playlist = List.of();
 
-        //Filter the complete media list to just media that isn't in the playlist
-        this.otherMedia = new ArrayList<>(this.getFileMan().getMedia());
-        this.otherMedia.removeIf(s -> playlistMedia.contains(s));
+        //Point the tables at the playlist and the rest of the library, no rows are copied
+        this.model.open(this.getFileMan().getMedia(), playlist);
 
         //Set the name field to start filled with the current playlists name
         this.nameField.setText(playlistName);
-
-        //Fill the tables with the appropriate media items
-        this.populateTables();
         this.getFrame().setVisible(true); //Make the frame visible
     }
 
     /**
-     * Fill the tables with the correct items so the items can be moved
+     * Moves rows from one table to the other, rows from the playlist go back to the other media and the rest are
+     * added to the end of the playlist
+     * @param table the table the rows are in
+     * @param rows the rows to move
      */
-    public void populateTables() {
-        //Empty the current tables to avoid repeating data
-        this.playlistModel.setRowCount(0);
-        this.mediaModel.setRowCount(0);
-
-        //For each playlist item add the items name to the playlist table
-        for (MediaItem item : this.playlistMedia) {
-            this.playlistModel.addRow(new String[]{ item.getName() });
-        }
-        //For each item not in the playlist add the items name to the other table
-        for (MediaItem item : this.otherMedia) {
-            this.mediaModel.addRow(new String[]{ item.getName() });
-        }
+    public void moveRows(JTable table, int[] rows) {
+        if (table == this.playlistTable) this.model.removeFromPlaylist(rows);
+        else this.model.addToPlaylist(rows);
+    }
+
+    /**
+     * Moves all the selected rows of the other media table to the end of the playlist
+     */
+    public void addSelected() {
+        this.moveRows(this.mediaTable, this.mediaTable.getSelectedRows());
+        this.mediaTable.clearSelection();
+    }
+
+    /**
+     * Moves all the selected rows of the playlist table back to the other media table
+     */
+    public void removeSelected() {
+        this.moveRows(this.playlistTable, this.playlistTable.getSelectedRows());
+        this.playlistTable.clearSelection();
     }
 
     /**
@@ -164,15 +169,7 @@ public class PlaylistEditor extends UserInterface{
      * @return the media items from the playlist table
      */
     public List<MediaItem> getPlaylistMedia() {
-        return this.playlistMedia;
-    }
-
-    /**
-     * Gets the media items that are not a part of the current playlist
-     * @return all the media items that are not currently in use by the playlist
-     */
-    public List<MediaItem> getOtherMedia() {
-        return this.otherMedia;
+        return this.model.getPlaylistMedia();
     }
 
     /**
@@ -0,0 +1,100 @@
+package application;
+
+import application.listeners.ScanButtonHandler;
+import application.listeners.ScanListener;
+import util.FolderScanner;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+
+public class ScanWindow extends UserInterface {
+    private final MediaDashboard dashboard; //The main media library dashboard
+    private final JLabel progressLabel; //Label showing how many files have been found and added
+    private FolderScanner scanner; //The scan currently being shown, null if no scan has been started
+
+    /**
+     * Creates the window showing the progress of a folder scan
+     * @param dashboard the media library dashboard that created this instance
+     */
+    public ScanWindow(MediaDashboard dashboard) {
+        super(dashboard.getFileMan());
+        this.dashboard = dashboard;
+
+        //Label and progress bar showing that the scan is running
+        this.progressLabel = new JLabel("Scanning...");
+        JProgressBar progressBar = new JProgressBar();
+        progressBar.setIndeterminate(true); //The number of files isn't known until the scan finishes
+
+        //Button to stop the scan part way through
+        JButton cancelBtn = new JButton("Cancel scan");
+        cancelBtn.addActionListener(new ScanButtonHandler(this));
+
+        this.getContentPane().add(this.progressLabel);
+        this.getContentPane().add(progressBar);
+        this.getContentPane().add(cancelBtn);
+
+        //Build the frame hidden and shrink it since it only holds a few elements
+        this.buildGUI("Scanning folder", false);
+        this.getFrame().setSize(new Dimension(350, 130));
+        //Closing the window cancels the scan rather than leaving it running unseen
+        this.getFrame().setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+        this.getFrame().addWindowListener(new WindowAdapter() {
+            /**
+             * Cancels the scan when the window is closed
+             * @param e the event of the window closing
+             */
+            @Override
+            public void windowClosing(WindowEvent e) {
+                cancel();
+            }
+        });
+    }
+
+    /**
+     * Starts scanning a folder and shows the window with its progress
+     * @param dir the folder to scan
+     */
+    public void start(File dir) {
+        this.progressLabel.setText("Scanning " + dir.getName() + "...");
+        this.scanner = this.getFileMan().scan(dir, new ScanListener(this));
+        this.getFrame().setLocationRelativeTo(this.dashboard.getFrame());
+        this.getFrame().setVisible(true);
+    }
+
+    /**
+     * Updates the progress shown in the window
+     * @param found number of media files found so far
+     * @param added number of media files added to the library so far
+     */
+    public void setProgress(int found, int added) {
+        this.progressLabel.setText(found + " media files found, " + added + " added");
+    }
+
+    /**
+     * Stops the scan, anything found before it was stopped stays in the library
+     */
+    public void cancel() {
+        if (this.scanner != null) this.scanner.cancel(true);
+    }
+
+    /**
+     * Hides the window and tells the user how many files were added and skipped
+     * @param added number of media files added to the library
+     * @param duplicates number of media files skipped because they were already in the library
+     * @param skipped number of files skipped because they aren't a supported type
+     * @param cancelled true if the scan was cancelled before it finished
+     */
+    public void finish(int added, int duplicates, int skipped, boolean cancelled) {
+        this.getFrame().setVisible(false);
+        String message = added + " media files were found and added to the library.\n"
+                + duplicates + " were already in the library.\n"
+                + skipped + " other files aren't a supported type.";
+        if (cancelled) message = "The scan was cancelled.\n" + message;
+        else message += "\nThe folder will now be kept in sync with the library.";
+        JOptionPane.showMessageDialog(this.dashboard.getFrame(),
+                message, "Scan complete", JOptionPane.INFORMATION_MESSAGE);
+    }
+}
@@ -1,8 +1,10 @@
 package application.listeners;
 
 import application.MediaDashboard;
+import application.ScanWindow;
 import util.FileManager;
 import util.MediaItem;
+import util.ProbeRegistry;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
@@ -12,6 +14,7 @@ import java.io.File;
 import java.util.List;
 
 public class DashboardButtonHandler extends Handler {
+    private final ScanWindow scanWindow; //Window showing the progress of folder scans
 
     /**
      * Save the dashboard and file manager for easy use on button presses
@@ -19,6 +22,7 @@ public class DashboardButtonHandler extends Handler {
      */
     public DashboardButtonHandler(MediaDashboard ui) {
         super(ui);
+        this.scanWindow = new ScanWindow(ui);
     }
 
     /**
@@ -27,6 +31,14 @@ public class DashboardButtonHandler extends Handler {
      */
     @Override
     public void actionPerformed(ActionEvent e) {
+        //The library can't be changed while it is still loading since rows are still being added
+        if (this.getUI().getFileMan().isLoading()) {
+            JOptionPane.showMessageDialog(this.getUI().getFrame(),
+                    "Please wait for the library to finish loading.",
+                    "Library loading", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
         //if the file managers file property hasn't been set then disable button presses.
         if (!this.getUI().getFileMan().hasFile()) {
             JOptionPane.showMessageDialog(this.getUI().getFrame(),
@@ -54,13 +66,7 @@ public class DashboardButtonHandler extends Handler {
         //Creates the file selection menu
         JFileChooser fileChooser = new JFileChooser();
         //By default, will only show the selectable files
-        fileChooser.setFileFilter(new FileNameExtensionFilter("Media Files",
-                "jpg",
-                "png",
-                "jpeg",
-                "wav",
-                "mp4"
-        ));
+        fileChooser.setFileFilter(new FileNameExtensionFilter("Media Files", ProbeRegistry.getDefault().getExtensions()));
 
         //Get the GUI and cast to MediaDashboard class
         MediaDashboard dashboard = (MediaDashboard) this.getUI();
@@ -78,9 +84,13 @@ public class DashboardButtonHandler extends Handler {
             return;
         }
 
-        //Add the selected media to the file manager and update the media library table
-        dashboard.getFileMan().addMedia(dir);
-        dashboard.populateTable();
+        //Add the selected media to the file manager, the table is told about the new row by the file manager
+        //If it is already in the library then tell the user instead of adding it twice
+        if (!dashboard.getFileMan().addMedia(dir)) {
+            JOptionPane.showMessageDialog(dashboard.getFrame(),
+                    "That file is already in the library.",
+                    "Duplicate file", JOptionPane.ERROR_MESSAGE);
+        }
     }
 
     /**
@@ -90,48 +100,38 @@ public class DashboardButtonHandler extends Handler {
     private void delMedia() {
         //Get the GUI and cast it to the MediaDashboard class
         MediaDashboard dashboard = (MediaDashboard) this.getUI();
-        //If no row is selected on the media table then display an error message
-        int rowIndex = dashboard.getRowIndex();
-        if (rowIndex == -1) {
+        //If no rows are selected on the media table then display an error message
+        List<MediaItem> mediaItems = dashboard.getSelectedItems();
+        if (mediaItems.isEmpty()) {
             JOptionPane.showMessageDialog(dashboard.getFrame(),
-                    "Please select a media item you wish to remove.",
+                    "Please select the media items you wish to remove.",
                     "No media item selected", JOptionPane.ERROR_MESSAGE);
             return;
         }
 
+        //The table might be showing a playlist or search results, so the items are removed by MediaItem rather
+        //than by row. The file manager removes them all in one pass and also takes them out of every playlist
         FileManager fileMan = dashboard.getFileMan();
-        MediaItem mediaItem;
-        String currentPlaylist = dashboard.getCurrentPlaylist();
-        //If no playlist is selected then the rowIndex will match up with the media list so remove by index
-        if (currentPlaylist.equals("none")) {
-            mediaItem = fileMan.getMedia().get(rowIndex);
-            fileMan.delMedia(rowIndex);
-        } else {
-            //If a playlist is selected get the MediaItem from the playlist
-            mediaItem = fileMan.getPlaylist(currentPlaylist).get(rowIndex);
-            //Use the MediaItem to get the index of the item in the media list then remove that item
-            int mediaIndex = fileMan.getMedia().indexOf(mediaItem);
-            fileMan.delMedia(mediaIndex);
-        }
-
-        //Cycle through all playlists that has the media item and remove the item from the playlist
-        for (String playlistName : fileMan.getMediasPlaylists(mediaItem)) {
-            List<MediaItem> playlist = fileMan.getPlaylist(playlistName);
-            playlist.remove(mediaItem);
-        }
-
-        //Update the table with the updated media list
-        dashboard.populateTable(currentPlaylist);
+        fileMan.delMedia(mediaItems);
+        //The file manager tells the table which rows to remove once for all of them
     }
 
     /**
      * The function ran when the scan media button is clicked.
-     * Will let the user pick a folder that will then be searched and all valid file types in it will be
-     * added to the media organiser.
+     * Will let the user pick a folder that will then be searched along with all of its sub folders in the
+     * background, all valid file types found will be added to the media organiser.
      */
     private void scanMedia() {
         //Get the GUI and cast it to MediaDashboard class
         MediaDashboard dashboard = (MediaDashboard) this.getUI();
+        //Only one folder can be scanned at a time
+        if (dashboard.getFileMan().isScanning()) {
+            JOptionPane.showMessageDialog(dashboard.getFrame(),
+                    "Please wait for the current scan to finish.",
+                    "Scan running", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
         //Create a file chooser that only allows directories to be chosen, not regular files
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
@@ -140,30 +140,9 @@ public class DashboardButtonHandler extends Handler {
         int choice = fileChooser.showOpenDialog(dashboard.getFrame());
         if (choice != JFileChooser.APPROVE_OPTION) return;
 
-        //Get the selected directory and create an int to keep track of how many files have been added
-        FileManager fileMan = dashboard.getFileMan();
-        File dir = fileChooser.getSelectedFile();
-        int newFiles = 0;
-
-        //Get a list of the files in the given directory and check if null
-        String[] dirList = dir.list();
-        if (dirList != null) {
-            //For each file check if it is a valid file type, if not the move to next item
-            for (String fileName : dir.list()) {
-                if (fileMan.nonValidFile(fileName)) continue;
-
-                //File type is valid so increase file counter and add the file to the file manager
-                newFiles++;
-                fileMan.addMedia(dir.getAbsolutePath() + "\\" + fileName);
-            }
-        }
-
-        //Show a message telling the user how many files have been added then populate the media table
-        //with the full list
-        JOptionPane.showMessageDialog(dashboard.getFrame(),
-                newFiles + " media files were found and added to the library.",
-                "Scan complete", JOptionPane.INFORMATION_MESSAGE);
-        dashboard.populateTable();
+        //Scan the folder in the background, the scan window shows the progress and the rows are added
+        //to the table in batches as the files are probed
+        this.scanWindow.start(fileChooser.getSelectedFile());
     }
 
     /**
@@ -173,20 +152,16 @@ public class DashboardButtonHandler extends Handler {
     private void openInExplorer() {
         //Check if a row is selected. If no row selected show error message and return.
         MediaDashboard dashboard = (MediaDashboard) this.getUI();
-        int rowIndex = dashboard.getRowIndex();
-        if (rowIndex == -1) {
+        MediaItem mediaItem = dashboard.getSelectedItem();
+        if (mediaItem == null) {
             JOptionPane.showMessageDialog(dashboard.getFrame(),
                     "Please select a file to open in file explorer",
                     "No file selected", JOptionPane.ERROR_MESSAGE);
             return;
         }
 
-        //Check to see if playlist is loaded, if playlist not loaded then get path from regular media list
-        //Otherwise get the path from the playlist current loaded
-        String currentPlaylist = dashboard.getCurrentPlaylist();
-        String path;
-        if (currentPlaylist.equals("none")) path = dashboard.getFileMan().getMedia().get(rowIndex).getPath();
-        else path = dashboard.getFileMan().getPlaylist(currentPlaylist).get(rowIndex).getPath();
+        //The selected row gives the media item whether the table is showing all media, a playlist or a search
+        String path = mediaItem.getPath();
         //Create a File instance with the given path
         File file = new File(path.substring(0, path.lastIndexOf("\\")));
 
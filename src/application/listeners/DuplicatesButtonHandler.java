@@ -0,0 +1,24 @@
+package application.listeners;
+
+import application.DuplicatesWindow;
+
+import java.awt.event.ActionEvent;
+
+public class DuplicatesButtonHandler extends Handler {
+    /**
+     * Class Constructor that passes the DuplicatesWindow into the Handler constructor
+     * @param ui the DuplicatesWindow instance using this handler
+     */
+    public DuplicatesButtonHandler(DuplicatesWindow ui) {
+        super(ui);
+    }
+
+    /**
+     * Function ran when the cancel button is clicked, stops the running search
+     * @param e the event to be processed
+     */
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        ((DuplicatesWindow) this.getUI()).cancel();
+    }
+}
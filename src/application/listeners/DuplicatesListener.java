@@ -0,0 +1,40 @@
+package application.listeners;
+
+import application.DuplicatesWindow;
+import util.DuplicateFinder;
+import util.MediaItem;
+
+import java.util.List;
+
+public class DuplicatesListener implements DuplicateFinder.Listener {
+    private final DuplicatesWindow window; //The window showing the search
+
+    /**
+     * Creates a listener that shows the progress and results of a duplicate search in the window
+     * @param window the window showing the search
+     */
+    public DuplicatesListener(DuplicatesWindow window) {
+        this.window = window;
+    }
+
+    /**
+     * Shows how far the search has got in the window
+     * @param stage description of what is currently being done
+     * @param done number of files finished in this stage
+     * @param total number of files in this stage
+     */
+    @Override
+    public void progress(String stage, int done, int total) {
+        window.setProgress(stage, done, total);
+    }
+
+    /**
+     * Shows the groups of duplicates found in the window
+     * @param groups groups of media items with identical content, empty if cancelled
+     * @param cancelled true if the search was cancelled before it finished
+     */
+    @Override
+    public void finished(List<List<MediaItem>> groups, boolean cancelled) {
+        window.showResults(groups, cancelled);
+    }
+}
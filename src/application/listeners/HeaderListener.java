@@ -0,0 +1,30 @@
+package application.listeners;
+
+import application.MediaDashboard;
+
+import javax.swing.table.JTableHeader;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+
+public class HeaderListener extends MouseAdapter {
+    private final MediaDashboard dashboard; //The dashboard whose table header is being clicked
+
+    /**
+     * Creates a listener that sorts the dashboard table by the column heading clicked
+     * @param dashboard the media library dashboard
+     */
+    public HeaderListener(MediaDashboard dashboard) {
+        this.dashboard = dashboard;
+    }
+
+    /**
+     * Function ran when a column heading is clicked, sorts by that column or swaps the direction if already sorted by it
+     * @param e the event to be processed
+     */
+    @Override
+    public void mouseClicked(MouseEvent e) {
+        JTableHeader header = (JTableHeader) e.getSource();
+        int column = header.columnAtPoint(e.getPoint());
+        if (column != -1) dashboard.sortBy(column);
+    }
+}
@@ -0,0 +1,51 @@
+package application.listeners;
+
+import application.MediaDashboard;
+import util.LibraryLoader;
+
+import javax.swing.*;
+
+public class LoadListener implements LibraryLoader.Listener {
+    private final MediaDashboard dashboard; //The dashboard showing the library being loaded
+    private final boolean showErrors; //If an error message should be shown when the library can't be read
+
+    /**
+     * Creates a listener that shows a library on the dashboard as it loads
+     * @param dashboard the media library dashboard
+     * @param showErrors true to display an error message if the file can't be read, false to fail silently
+     */
+    public LoadListener(MediaDashboard dashboard, boolean showErrors) {
+        this.dashboard = dashboard;
+        this.showErrors = showErrors;
+    }
+
+    /**
+     * Shows how far through the load is in the dashboard status
+     * @param probed number of rows with their metadata filled in
+     * @param read number of rows read from the file so far
+     */
+    @Override
+    public void progress(int probed, int read) {
+        dashboard.setStatus("Loading... " + probed + " of " + read + " media files read");
+    }
+
+    /**
+     * Function ran when the load has finished, generates the playlist menu or displays an error
+     * @param success true if the file was read successfully, false otherwise
+     */
+    @Override
+    public void finished(boolean success) {
+        if (success) {
+            dashboard.genPlaylists();
+            dashboard.setStatus(dashboard.getFileMan().getMedia().size() + " media files");
+            return;
+        }
+
+        dashboard.setStatus("");
+        if (showErrors) {
+            JOptionPane.showMessageDialog(dashboard.getFrame(),
+                    "Sorry, you didn't pick a valid media library file.\nOr something went wrong reading the file.",
+                    "File error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+}
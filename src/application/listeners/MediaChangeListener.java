@@ -0,0 +1,73 @@
+package application.listeners;
+
+import application.MediaDashboard;
+import util.MediaListener;
+
+public class MediaChangeListener implements MediaListener {
+    private final MediaDashboard dashboard; //The dashboard whose table shows the media
+
+    /**
+     * Creates a listener that applies changes to the media straight to the dashboard table
+     * @param dashboard the media library dashboard
+     */
+    public MediaChangeListener(MediaDashboard dashboard) {
+        this.dashboard = dashboard;
+    }
+
+    /**
+     * Adds the new media to the table
+     * @param first index of the first new item
+     * @param last index of the last new item
+     */
+    @Override
+    public void mediaInserted(int first, int last) {
+        dashboard.addRows(first, last);
+    }
+
+    /**
+     * Removes the rows of the removed media from the table
+     * @param first index the first removed item had before it was removed
+     * @param last index the last removed item had before it was removed
+     */
+    @Override
+    public void mediaRemoved(int first, int last) {
+        dashboard.removeRows(first, last);
+    }
+
+    /**
+     * Removes the rows of many removed media items from the table at once
+     * @param indexes the indexes the removed items had before any were removed, sorted
+     */
+    @Override
+    public void mediaRemoved(int[] indexes) {
+        dashboard.removeRows(indexes);
+    }
+
+    /**
+     * Redraws the rows of media whose metadata has changed
+     * @param first index of the first updated item
+     * @param last index of the last updated item
+     */
+    @Override
+    public void mediaUpdated(int first, int last) {
+        dashboard.updateRows(first, last);
+    }
+
+    /**
+     * Removes the rows of media taken out of a playlist, if the table is showing it
+     * @param playlist name of the playlist
+     */
+    @Override
+    public void playlistMediaRemoved(String playlist) {
+        dashboard.removePlaylistRows(playlist);
+    }
+
+    /**
+     * Reloads the table if it is showing a playlist that has been replaced or removed
+     * @param playlist name of the playlist
+     */
+    @Override
+    public void playlistChanged(String playlist) {
+        dashboard.refreshPlaylist(playlist);
+    }
+}
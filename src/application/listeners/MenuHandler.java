@@ -1,19 +1,23 @@
 package application.listeners;
 
+import application.DuplicatesWindow;
 import application.MediaDashboard;
 import application.PlaylistEditor;
 import util.FileManager;
+import util.LibraryFile;
 import util.MediaItem;
+import util.ProbeRegistry;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.event.ActionEvent;
 import java.io.File;
-import java.io.FileWriter;
 import java.util.List;
+import java.util.Map;
 
 public class MenuHandler extends Handler {
     private final PlaylistEditor playlistEditor; //Menu allowing editing of playlists
+    private final DuplicatesWindow duplicatesWindow; //Window listing media with identical content
 
     /**
      * Handles all menu interactions for the dashboard
@@ -22,6 +26,7 @@ public class MenuHandler extends Handler {
     public MenuHandler(MediaDashboard dashboard) {
         super(dashboard);
         this.playlistEditor = new PlaylistEditor(dashboard);
+        this.duplicatesWindow = new DuplicatesWindow(dashboard);
     }
 
     /**
@@ -41,6 +46,11 @@ public class MenuHandler extends Handler {
             case "New playlist" -> newPlaylist();
             case "Edit playlist" -> editPlaylist();
             case "Close playlist" -> dashboard.populateTable();
+            case "Combine playlists" -> combinePlaylists();
+            case "Find duplicates" -> findDuplicates();
+            case "Stop watching folders" -> unwatchFolders();
+            case "Autosave settings" -> autosaveSettings();
+            case "Probe statistics" -> probeStatistics();
             default -> openPlaylist(menuItem.getText()); //If the text didn't match any others it must be a playlist
         }
     }
@@ -54,6 +64,7 @@ public class MenuHandler extends Handler {
         MediaDashboard dashboard = (MediaDashboard) this.getUI();
         FileManager fileMan = dashboard.getFileMan();
         //If there's already a file and changes have been made then ask if they would like to save their changes
+        boolean discard = false; //If the user chose not to save, the changes are thrown away once a file is picked
         if (fileMan.hasFile() && fileMan.changesMade()) {
             int choice = JOptionPane.showOptionDialog(dashboard.getFrame(),
                     "Would you like to save any changes to the current file?",
@@ -72,36 +83,33 @@ public class MenuHandler extends Handler {
                 }
                 //If the prompt was closed then do nothing, this will not trigger if user says no
             } else if (choice == JOptionPane.CLOSED_OPTION) return;
+            discard = choice == JOptionPane.NO_OPTION;
         }
 
-        //Open a file chooser with a filter to only show csv files
+        //Open a file chooser with a filter to only show csv and binary library files
         JFileChooser fileChooser = new JFileChooser();
-        fileChooser.setFileFilter(new FileNameExtensionFilter("Media Library File", "csv"));
+        fileChooser.setFileFilter(new FileNameExtensionFilter("Media Library File", "csv",
+                LibraryFile.BINARY_EXTENSION));
 
         //If the user closes the file chooser then do nothing
         int choice = fileChooser.showOpenDialog(dashboard.getFrame());
         if (choice == JFileChooser.CANCEL_OPTION) return;
 
-        //Check if the user chose a csv file and if not display an error message
+        //Check if the user chose a library file and if not display an error message
         File file = fileChooser.getSelectedFile();
-        if (!file.getName().endsWith("csv")) {
+        if (!file.getName().endsWith("csv") && !file.getName().endsWith(LibraryFile.BINARY_EXTENSION)) {
             JOptionPane.showMessageDialog(dashboard.getFrame(),
                     "Sorry you did not select a valid media library file.",
                     "Invalid file", JOptionPane.ERROR_MESSAGE);
             return;
         }
 
-        //If the file was not able to be read from, display an error message
-        boolean success = fileMan.setFile(file);
-        if (!success) {
-            JOptionPane.showMessageDialog(dashboard.getFrame(),
-                    "Sorry, you didn't pick a valid media library file.\nOr something went wrong reading the file.",
-                    "File error", JOptionPane.ERROR_MESSAGE);
-        } else {
-            //If file is read successfully populate the media table and generate the playlist menu
-            dashboard.populateTable();
-            dashboard.genPlaylists();
-        }
+        //Throw away the unsaved changes so they aren't recovered next time the current library is opened
+        if (discard) fileMan.discardChanges();
+
+        //Load the file in the background, rows are added to the media table as they are read and
+        //an error message is displayed if the file can't be read
+        dashboard.openLibrary(file, true);
     }
 
     /**
@@ -113,6 +121,7 @@ public class MenuHandler extends Handler {
         MediaDashboard dashboard = (MediaDashboard) this.getUI();
         FileManager fileMan = dashboard.getFileMan();
         //If a file was already open and changes were made during the session ask the user if they want to save.
+        boolean discard = false; //If the user chose not to save, the changes are thrown away once a file is picked
         if (fileMan.hasFile() && fileMan.changesMade()) {
             int choice = JOptionPane.showOptionDialog(dashboard.getFrame(),
                     "Would you like to save any changes to the current file?",
@@ -130,11 +139,14 @@ public class MenuHandler extends Handler {
                 }
                 //If the panel is closed then do nothing, does not apply if they press no
             } else if (choice == JOptionPane.CLOSED_OPTION) return;
+            discard = choice == JOptionPane.NO_OPTION;
         }
 
         //Create a file chooser and give it a default file
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setSelectedFile(new File("media library.csv"));
+        fileChooser.setFileFilter(new FileNameExtensionFilter("Media Library File", "csv",
+                LibraryFile.BINARY_EXTENSION));
 
         //Loop to make sure the user picks a file
         boolean fileSelected = false;
@@ -145,9 +157,10 @@ public class MenuHandler extends Handler {
             if (choice != JFileChooser.APPROVE_OPTION) return;
 
             //If invalid file type then loop end this cycle so the user has to pick a new file
-            if (!fileChooser.getSelectedFile().getName().endsWith("csv")) {
+            String name = fileChooser.getSelectedFile().getName();
+            if (!name.endsWith("csv") && !name.endsWith(LibraryFile.BINARY_EXTENSION)) {
                 JOptionPane.showMessageDialog(dashboard.getFrame(),
-                        "Invalid file type please create a file of type .csv",
+                        "Invalid file type please create a file of type .csv or ." + LibraryFile.BINARY_EXTENSION,
                         "Invalid file", JOptionPane.ERROR_MESSAGE);
                 continue;
             }
@@ -163,12 +176,14 @@ public class MenuHandler extends Handler {
             fileSelected = true; //At this point a file has been selected so end the loop
         }
 
+        //Throw away the unsaved changes so they aren't recovered next time the current library is opened
+        if (discard) fileMan.discardChanges();
+
         try {
-            //Create a file writer to write heading to the csv file
-            FileWriter writer = new FileWriter(fileChooser.getSelectedFile());
-            //Heading allowing the file manager to quickly see that the given file is for the media organiser
-            writer.write("[MediaLibraryOrganiserFile]\n");
-            writer.close();
+            //Write an empty library, .mlib files use the compact binary format and anything else is csv.
+            //Both start with a heading allowing the file manager to quickly see the file is for the media organiser
+            File file = fileChooser.getSelectedFile();
+            LibraryFile.createEmpty(file, file.getName().endsWith(LibraryFile.BINARY_EXTENSION));
         } catch (Exception e) {
             //If something went wrong display an error and end the function with a return
             JOptionPane.showMessageDialog(dashboard.getFrame(),
@@ -197,6 +212,9 @@ public class MenuHandler extends Handler {
      * that name.
      */
     private void newPlaylist() {
+        //Playlists can't be made until all the media they could contain has loaded
+        if (this.isLoading()) return;
+
         //Create a panel to be used for the name prompt
         JPanel panel = new JPanel();
         panel.add(new JLabel("Enter name for the playlist: "));
@@ -228,6 +246,8 @@ public class MenuHandler extends Handler {
      * Will open a panel with a drop-down to select playlist to edit and open an editor frame
      */
     private void editPlaylist() {
+        if (this.isLoading()) return;
+
         //If there are no playlists display an error and return
         MediaDashboard dashboard = (MediaDashboard) this.getUI();
         if (dashboard.getFileMan().getPlaylistNames().length < 1) {
@@ -258,6 +278,138 @@ public class MenuHandler extends Handler {
         this.playlistEditor.open(comboBox.getSelectedItem().toString());
     }
 
+    /**
+     * Function ran when the combine playlists menu item is clicked.
+     * Will open a panel to pick two playlists, how to combine them and the name of the new playlist they make
+     */
+    private void combinePlaylists() {
+        if (this.isLoading()) return;
+
+        //Combining needs two playlists, so display an error if there aren't enough
+        MediaDashboard dashboard = (MediaDashboard) this.getUI();
+        String[] names = dashboard.getFileMan().getPlaylistNames();
+        if (names.length < 2) {
+            JOptionPane.showMessageDialog(dashboard.getFrame(),
+                    "You need at least two playlists to combine.\n" +
+                            "Use the \"New playlist\" button to create a new playlist",
+                    "Not enough playlists", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        //Create a panel with combo-boxes for the two playlists and the operation, and a field for the name
+        JPanel panel = new JPanel();
+        JComboBox<String> firstBox = new JComboBox<>(names);
+        JComboBox<String> operationBox = new JComboBox<>(new String[] { "Union", "Intersection", "Difference" });
+        JComboBox<String> secondBox = new JComboBox<>(names);
+        secondBox.setSelectedIndex(1);
+        JTextField textField = new JTextField(16);
+        panel.add(firstBox);
+        panel.add(operationBox);
+        panel.add(secondBox);
+        panel.add(new JLabel("Name:"));
+        panel.add(textField);
+
+        //If the user does anything but press ok then return and do nothing
+        int result = JOptionPane.showConfirmDialog(dashboard.getFrame(),
+                panel, "Combine playlists",
+                JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE);
+        if (result != JOptionPane.OK_OPTION) return;
+
+        //If the name is an invalid length then display an error and don't create the playlist
+        String name = textField.getText();
+        if (name.length() < 1 || name.length() > 16) {
+            JOptionPane.showMessageDialog(dashboard.getFrame(),
+                    "The name must be between 0-16 characters long",
+                    "Invalid name", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        //Combine the playlists with their bit sets and save the result as a new playlist
+        List<MediaItem> media = dashboard.getFileMan().combinePlaylists(firstBox.getSelectedItem().toString(),
+                operationBox.getSelectedItem().toString(), secondBox.getSelectedItem().toString());
+        if (media == null) return;
+        dashboard.getFileMan().addPlaylist(name, media);
+        dashboard.genPlaylists();
+    }
+
+    /**
+     * Function ran when the find duplicates menu item is clicked.
+     * Searches the library for media with identical content in the background and lists it in a new window
+     */
+    private void findDuplicates() {
+        //The whole library needs to be loaded before it can be searched
+        if (this.isLoading()) return;
+        this.duplicatesWindow.start();
+    }
+
+    /**
+     * Function ran when the stop watching folders menu item is clicked.
+     * Stops keeping the scanned folders in sync with the library, they can be watched again by scanning them
+     */
+    private void unwatchFolders() {
+        int count = this.getUI().getFileMan().unwatchFolders();
+        JOptionPane.showMessageDialog(this.getUI().getFrame(),
+                "Stopped watching " + count + " folders.\nScan a folder again to keep it in sync with the library.",
+                "Folders unwatched", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    /**
+     * Function ran when the "Autosave settings" menu item is clicked.
+     * Asks the user how long after a change the library should be saved automatically.
+     */
+    private void autosaveSettings() {
+        FileManager fileMan = this.getUI().getFileMan();
+        String input = (String) JOptionPane.showInputDialog(this.getUI().getFrame(),
+                "Save changes automatically once none have been made for how many seconds?\n" +
+                        "If changes keep being made they are saved after " + FileManager.AUTOSAVE_MAX_WAIT_FACTOR +
+                        " times as long at most.\nEnter 0 to turn autosave off, the most allowed is " +
+                        FileManager.MAX_AUTOSAVE_SECONDS + " (one day).",
+                "Autosave settings", JOptionPane.QUESTION_MESSAGE, null, null,
+                String.valueOf(fileMan.getAutosaveDelay()));
+        if (input == null) return; //The user cancelled so leave the setting as it was
+
+        try {
+            int seconds = Integer.parseInt(input.trim());
+            if (seconds < 0 || seconds > FileManager.MAX_AUTOSAVE_SECONDS) throw new NumberFormatException();
+            fileMan.setAutosaveDelay(seconds);
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this.getUI().getFrame(),
+                    "Please enter a whole number of seconds from 0 to " + FileManager.MAX_AUTOSAVE_SECONDS + ".",
+                    "Invalid delay", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Function ran when the "Probe statistics" menu item is clicked.
+     * Shows how many files each media probe has read and how long they took.
+     */
+    private void probeStatistics() {
+        StringBuilder message = new StringBuilder();
+        for (Map.Entry<String, ProbeRegistry.Stats> entry : ProbeRegistry.getDefault().getStats().entrySet()) {
+            ProbeRegistry.Stats stats = entry.getValue();
+            message.append(entry.getKey()).append(": ")
+                    .append(stats.getCount()).append(" files, ")
+                    .append(String.format("%.2f", stats.getAverageMillis())).append("ms average, ")
+                    .append(stats.getFailures()).append(" failed, ")
+                    .append(stats.getTimeouts()).append(" timed out, ")
+                    .append(stats.getSkipped()).append(" skipped\n");
+        }
+        JOptionPane.showMessageDialog(this.getUI().getFrame(), message.toString(),
+                "Probe statistics", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    /**
+     * Checks if the library is still loading and if so tells the user to wait
+     * @return true if the library is still loading, false otherwise
+     */
+    private boolean isLoading() {
+        if (!this.getUI().getFileMan().isLoading()) return false;
+        JOptionPane.showMessageDialog(this.getUI().getFrame(),
+                "Please wait for the library to finish loading.",
+                "Library loading", JOptionPane.ERROR_MESSAGE);
+        return true;
+    }
+
     /**
      * Function ran when a playlist menu item is clicked.
      * Loads the chosen playlist into the media JTable
@@ -1,7 +1,6 @@
 package application.listeners;
 
 import application.PlaylistEditor;
-import util.MediaItem;
 
 import javax.swing.*;
 import java.awt.event.MouseAdapter;
@@ -28,20 +27,8 @@ public class MouseListener extends MouseAdapter {
         JTable selectedTable = (JTable) e.getSource();
         if (e.getClickCount() != 2 || selectedTable.getSelectedRow() == -1) return;
 
+        //Swap the double clicked row to the other table, only that row of each table is updated
         int rowIndex = selectedTable.getSelectedRow();
-        MediaItem selectedMedia;
-        //If selected item is in the playlist table then get the media from that list and swap to the other table
-        if (selectedTable.getColumnName(0).equals("Playlist")) {
-            selectedMedia = editor.getPlaylistMedia().get(rowIndex);
-            editor.getPlaylistMedia().remove(rowIndex);
-            editor.getOtherMedia().add(selectedMedia);
-            //If selected item is in the other media table then do the same but get value from other list
-        } else {
-            selectedMedia = editor.getOtherMedia().get(rowIndex);
-            editor.getOtherMedia().remove(rowIndex);
-            editor.getPlaylistMedia().add(selectedMedia);
-        }
-
-        editor.populateTables(); //Update the tables with the items new positions
+        editor.moveRows(selectedTable, new int[] { rowIndex });
     }
 }
@@ -24,6 +24,8 @@ public class PlaylistButtonHandler extends Handler {
 
         //Depending on what button is clicked run a different function
         switch (button.getText()) {
+            case "Remove selected" -> ((PlaylistEditor) this.getUI()).removeSelected();
+            case "Add selected" -> ((PlaylistEditor) this.getUI()).addSelected();
             case "Delete playlist" -> delete();
             case "Save playlist" -> save();
         }
@@ -0,0 +1,24 @@
+package application.listeners;
+
+import application.ScanWindow;
+
+import java.awt.event.ActionEvent;
+
+public class ScanButtonHandler extends Handler {
+    /**
+     * Class Constructor that passes the ScanWindow into the Handler constructor
+     * @param ui the ScanWindow instance using this handler
+     */
+    public ScanButtonHandler(ScanWindow ui) {
+        super(ui);
+    }
+
+    /**
+     * Function ran when the cancel button is clicked, stops the running scan
+     * @param e the event to be processed
+     */
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        ((ScanWindow) this.getUI()).cancel();
+    }
+}
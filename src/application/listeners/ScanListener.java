@@ -0,0 +1,38 @@
+package application.listeners;
+
+import application.ScanWindow;
+import util.FolderScanner;
+
+public class ScanListener implements FolderScanner.Listener {
+    private final ScanWindow window; //The window showing the progress of the scan
+
+    /**
+     * Creates a listener that shows the progress of a scan in the scan window
+     * @param window the window showing the scan
+     */
+    public ScanListener(ScanWindow window) {
+        this.window = window;
+    }
+
+    /**
+     * Shows how far the scan has got in the window
+     * @param found number of media files found so far
+     * @param added number of media files added to the library so far
+     */
+    @Override
+    public void progress(int found, int added) {
+        window.setProgress(found, added);
+    }
+
+    /**
+     * Shows the results of the scan in the window
+     * @param added number of media files added to the library
+     * @param duplicates number of media files skipped because they were already in the library
+     * @param skipped number of files skipped because they aren't a supported type
+     * @param cancelled true if the scan was cancelled before it finished
+     */
+    @Override
+    public void finished(int added, int duplicates, int skipped, boolean cancelled) {
+        window.finish(added, duplicates, skipped, cancelled);
+    }
+}
@@ -0,0 +1,27 @@
+package application.listeners;
+
+import application.MediaDashboard;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+public class ScrollListener implements ChangeListener {
+    private final MediaDashboard dashboard; //The dashboard whose table is being scrolled
+
+    /**
+     * Creates a listener that tells the dashboard whenever different rows of its table come on screen
+     * @param dashboard the media library dashboard
+     */
+    public ScrollListener(MediaDashboard dashboard) {
+        this.dashboard = dashboard;
+    }
+
+    /**
+     * Function ran when the table is scrolled or resized
+     * @param e the event to be processed
+     */
+    @Override
+    public void stateChanged(ChangeEvent e) {
+        dashboard.visibleRowsChanged();
+    }
+}
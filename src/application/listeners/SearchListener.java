@@ -0,0 +1,48 @@
+package application.listeners;
+
+import application.MediaDashboard;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+public class SearchListener implements DocumentListener {
+    private final MediaDashboard dashboard; //The dashboard whose table is being searched
+    private final JTextField field; //The search box being typed in
+
+    /**
+     * Creates a listener that filters the dashboard table whenever the search box changes
+     * @param dashboard the media library dashboard
+     * @param field the search box
+     */
+    public SearchListener(MediaDashboard dashboard, JTextField field) {
+        this.dashboard = dashboard;
+        this.field = field;
+    }
+
+    /**
+     * Function ran when text is typed into the search box
+     * @param e the event to be processed
+     */
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        dashboard.search(field.getText());
+    }
+
+    /**
+     * Function ran when text is deleted from the search box
+     * @param e the event to be processed
+     */
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        dashboard.search(field.getText());
+    }
+
+    /**
+     * Function ran when the style of the text changes, which doesn't change the search
+     * @param e the event to be processed
+     */
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+    }
+}
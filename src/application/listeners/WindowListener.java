@@ -44,6 +44,9 @@ public class WindowListener extends WindowAdapter {
                         "Save failed", JOptionPane.ERROR_MESSAGE);
                 return;
             }
+        } else if (choice == JOptionPane.NO_OPTION) {
+            //Throw away the unsaved changes so they aren't recovered next time the library is opened
+            this.fileMan.discardChanges();
         }
 
         //If the user closed the save prompt without saying yes/no then cancel the close
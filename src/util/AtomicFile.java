@@ -0,0 +1,63 @@
+package util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/**
+ * Writes files through a temporary file that is only moved over the original once it is completely on disk,
+ * so a crash part way through a write never leaves a truncated file behind.
+ */
+public class AtomicFile {
+    /**
+     * Writes the contents of a file to the stream it is given
+     */
+    public interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Replaces a file with new content, the original is left untouched if anything goes wrong
+     * @param target the file to write to
+     * @param content writes the new content of the file
+     * @throws IOException if the file couldn't be written or replaced
+     */
+    public static void write(File target, Content content) throws IOException {
+        Path path = target.toPath().toAbsolutePath();
+        //Temp file in the same folder as the target, a move within one file system can be atomic.
+        //Each write gets its own uniquely named temp file, so two threads writing the same target never write
+        //into each other's file or move one in half written
+        Path temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+
+        try {
+            //Temp files are only readable by their owner, so give it the permissions of the file it replaces
+            try {
+                Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(path));
+            } catch (NoSuchFileException | UnsupportedOperationException e) {
+                //A new file or a file system without POSIX permissions keeps the defaults
+            }
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                //Not closed here since closing the stream closes the channel before it can be forced
+                OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+                content.writeTo(out);
+                out.flush();
+                channel.force(true); //Make sure everything is on the disk before it replaces the original
+            }
+
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                //Some file systems can't do atomic moves, a plain replace is still better than writing in place
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            //Only still exists if something went wrong before the move
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package util;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.File;
+
+/**
+ * Reads the length of audio recordings using Java Sound
+ */
+class AudioProbe implements MediaProbe {
+    /**
+     * @return Audio, the type shown in the table for audio recordings
+     */
+    @Override
+    public String getType() {
+        return "Audio";
+    }
+
+    /**
+     * @return the extensions of wav recordings
+     */
+    @Override
+    public String[] getExtensions() {
+        return new String[] { "wav" };
+    }
+
+    /**
+     * Reads the length of a recording from its format, without decoding the samples
+     * @param file the audio file
+     * @return no resolution and the length of the recording
+     * @throws Exception if the file couldn't be read
+     */
+    @Override
+    public Metadata probe(File file) throws Exception {
+        try (AudioInputStream stream = AudioSystem.getAudioInputStream(file)) { //Get the audio as a stream
+            AudioFormat format = stream.getFormat(); //Get the format of the audio file
+            long frames = stream.getFrameLength(); //Get the number of frames in the audio stream
+            return new Metadata("N/A", (frames+0.0) / format.getFrameRate()); //Length is the number of frames / frame rate
+        }
+    }
+
+    /**
+     * @return no resolution, audio never has one, and no length
+     */
+    @Override
+    public Metadata unreadable() {
+        return new Metadata("N/A", 0);
+    }
+}
@@ -0,0 +1,61 @@
+package util;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+/**
+ * Saves the library in the background a while after it is changed, so a long session isn't lost if the
+ * application is closed without saving. The library is saved once no changes have been made for the autosave
+ * delay, so changes made in a burst, like a scan adding thousands of files, are saved together. If changes
+ * never stop for that long the library is still saved once FileManager.AUTOSAVE_MAX_WAIT_FACTOR delays have
+ * passed since the first of them. Everything here runs on the Swing event thread.
+ */
+class Autosave implements ActionListener {
+    private final FileManager fileMan; //The FileManager to save
+    private final Timer timer; //Fires when the library should be saved
+    private long deadline; //Time the changes waiting to be saved have to be saved by
+
+    /**
+     * Creates the scheduler for a FileManager, nothing is saved until changed is called
+     * @param fileMan the FileManager to save
+     */
+    Autosave(FileManager fileMan) {
+        this.fileMan = fileMan;
+        this.timer = new Timer(0, this);
+        this.timer.setRepeats(false);
+    }
+
+    /**
+     * Called whenever the library is changed, pushes the save back until the changes stop
+     */
+    void changed() {
+        int delay = this.fileMan.getAutosaveDelay();
+        if (delay <= 0) return; //Autosave is turned off
+
+        //The first change since the last save sets the latest the save can happen
+        long now = System.currentTimeMillis();
+        long quiet = delay * 1000L;
+        if (!this.timer.isRunning()) this.deadline = now + quiet * FileManager.AUTOSAVE_MAX_WAIT_FACTOR;
+        //The delay is limited to a day, but keep the cast safe whatever it is
+        long wait = Math.max(0, Math.min(quiet, this.deadline - now));
+        this.timer.setInitialDelay((int) Math.min(wait, Integer.MAX_VALUE));
+        this.timer.restart();
+    }
+
+    /**
+     * Stops any save that is waiting, for when the library is closed
+     */
+    void cancel() {
+        this.timer.stop();
+    }
+
+    /**
+     * Saves the library once the changes have stopped for the delay or the deadline has passed
+     * @param e the timer event
+     */
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        this.fileMan.autosave();
+    }
+}
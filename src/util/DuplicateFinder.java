@@ -0,0 +1,288 @@
+package util;
+
+import javax.swing.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Finds media files with identical content in the background, even if they are stored under different paths.
+ * Files are grouped by size first so files with a unique size are never read, then by a hash of just
+ * their start and end, and only files that still match are hashed completely.
+ */
+public class DuplicateFinder extends SwingWorker<List<List<MediaItem>>, DuplicateFinder.Progress> {
+    private static final int IO_THREADS = 4; //Most files read at once, more than this just makes the disk seek
+    private static final int PARTIAL_BYTES = 64 * 1024; //Bytes read from each end of a file for the partial hash
+    private static final int BUFFER_BYTES = 1024 * 1024; //Bytes read at a time for the full hash
+
+    private final List<MediaItem> media; //Snapshot of the media being searched
+    private final Listener listener; //Gets told about the progress of the search
+
+    /**
+     * Gets told about the progress of a search, every function is called on the Swing event thread
+     */
+    public interface Listener {
+        /**
+         * Progress of the search has changed
+         * @param stage description of what is currently being done
+         * @param done number of files finished in this stage
+         * @param total number of files in this stage
+         */
+        void progress(String stage, int done, int total);
+
+        /**
+         * The search has finished or been cancelled
+         * @param groups groups of media items with identical content, empty if cancelled
+         * @param cancelled true if the search was cancelled before it finished
+         */
+        void finished(List<List<MediaItem>> groups, boolean cancelled);
+    }
+
+    /**
+     * Progress update sent from the background thread to the event thread
+     */
+    static class Progress {
+        private final String stage; //What is currently being done
+        private final int done; //Files finished in the stage
+        private final int total; //Files in the stage
+
+        private Progress(String stage, int done, int total) {
+            this.stage = stage;
+            this.done = done;
+            this.total = total;
+        }
+    }
+
+    /**
+     * Works out a hash for a media file
+     */
+    private interface Hasher {
+        String hash(MediaItem item, long size) throws IOException;
+    }
+
+    /**
+     * Creates a search for duplicates among the given media
+     * @param media the media to search, copied so changes to the library during the search don't affect it
+     * @param listener gets told about the progress of the search
+     */
+    public DuplicateFinder(List<MediaItem> media, Listener listener) {
+        this.media = new ArrayList<>(media);
+        this.listener = listener;
+    }
+
+    /**
+     * Searches the media for duplicates, ran on a background thread
+     * @return groups of media items with identical content
+     * @throws Exception if the search was interrupted
+     */
+    @Override
+    protected List<List<MediaItem>> doInBackground() throws Exception {
+        //Bounded pool so only a few files are read at once, daemon threads so it never stops the app closing
+        ExecutorService io = Executors.newFixedThreadPool(IO_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "duplicate-finder");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            //Stage 1: group by size, only files sharing a size with another file can be duplicates
+            Map<MediaItem, Long> sizes = new HashMap<>();
+            Map<Long, List<MediaItem>> bySize = new HashMap<>();
+            for (int i = 0; i < this.media.size() && !this.isCancelled(); i++) {
+                MediaItem item = this.media.get(i);
+                long size = new File(item.getPath()).length();
+                //Missing or empty files have no content to compare
+                if (size == 0) continue;
+                sizes.put(item, size);
+                bySize.computeIfAbsent(size, k -> new ArrayList<>()).add(item);
+                if (i % 1000 == 0) this.publish(new Progress("Comparing file sizes", i, this.media.size()));
+            }
+            List<List<MediaItem>> groups = keepDuplicates(bySize.values());
+
+            //Stage 2: hash just the start and end of each file, for small files this covers the whole file
+            groups = this.refine(io, groups, sizes, DuplicateFinder::partialHash, "Comparing file starts and ends");
+
+            //Stage 3: files that are bigger than the partial hash covers still need the whole file hashing
+            List<List<MediaItem>> large = new ArrayList<>();
+            List<List<MediaItem>> results = new ArrayList<>();
+            for (List<MediaItem> group : groups) {
+                if (sizes.get(group.get(0)) > 2L * PARTIAL_BYTES) large.add(group);
+                else results.add(group);
+            }
+            results.addAll(this.refine(io, large, sizes, DuplicateFinder::fullHash, "Comparing full file contents"));
+            return results;
+        } finally {
+            io.shutdownNow(); //Stops any reads still going if the search was cancelled
+        }
+    }
+
+    /**
+     * Splits each group into smaller groups of items with the same hash
+     * @param io the pool the files are read on
+     * @param groups the groups of possible duplicates
+     * @param sizes the size of each media file in bytes
+     * @param hasher works out the hash for each file
+     * @param stage description of the stage shown as progress
+     * @return the groups of items that still match, each with at least two items
+     * @throws Exception if the search was interrupted
+     */
+    private List<List<MediaItem>> refine(ExecutorService io, List<List<MediaItem>> groups, Map<MediaItem, Long> sizes,
+                                         Hasher hasher, String stage) throws Exception {
+        //Start hashing every file in every group, the pool size limits how many are read at once
+        CompletionService<Map.Entry<MediaItem, String>> hashes = new ExecutorCompletionService<>(io);
+        int total = 0;
+        for (List<MediaItem> group : groups) {
+            for (MediaItem item : group) {
+                hashes.submit(() -> {
+                    //A file that can't be read anymore just isn't counted as a duplicate
+                    String hash;
+                    try {
+                        hash = hasher.hash(item, sizes.get(item));
+                    } catch (IOException e) {
+                        hash = null;
+                    }
+                    return new AbstractMap.SimpleEntry<>(item, hash);
+                });
+                total++;
+            }
+        }
+
+        //Collect the hashes as they finish, sizes are included in the key so groups never merge
+        Map<String, List<MediaItem>> byHash = new HashMap<>();
+        for (int done = 0; done < total; done++) {
+            if (this.isCancelled()) return new ArrayList<>();
+            Map.Entry<MediaItem, String> result = hashes.take().get();
+            MediaItem item = result.getKey();
+            String hash = result.getValue();
+            if (hash != null) {
+                byHash.computeIfAbsent(sizes.get(item) + ":" + hash, k -> new ArrayList<>()).add(item);
+            }
+            this.publish(new Progress(stage, done + 1, total));
+        }
+
+        //Put the items in each group back into library order, since they were collected in finishing order
+        Map<MediaItem, Integer> order = new HashMap<>();
+        for (List<MediaItem> group : groups) {
+            for (MediaItem item : group) order.put(item, order.size());
+        }
+        List<List<MediaItem>> refined = keepDuplicates(byHash.values());
+        for (List<MediaItem> group : refined) group.sort(Comparator.comparing(order::get));
+        return refined;
+    }
+
+    /**
+     * Gets only the groups that contain more than one item
+     * @param groups the groups to filter
+     * @return the groups that could contain duplicates
+     */
+    private static List<List<MediaItem>> keepDuplicates(Collection<List<MediaItem>> groups) {
+        List<List<MediaItem>> duplicates = new ArrayList<>();
+        for (List<MediaItem> group : groups) {
+            if (group.size() > 1) duplicates.add(group);
+        }
+        return duplicates;
+    }
+
+    /**
+     * Hashes the first and last PARTIAL_BYTES of a file
+     * @param item the media item to hash
+     * @param size the size of the file in bytes
+     * @return the hash as a hex string
+     * @throws IOException if the file couldn't be read
+     */
+    private static String partialHash(MediaItem item, long size) throws IOException {
+        MessageDigest digest = newDigest();
+        try (FileChannel channel = FileChannel.open(new File(item.getPath()).toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(PARTIAL_BYTES);
+            readFully(channel, buffer, 0);
+            digest.update(buffer.flip());
+            //If the file is small enough the start already covered the end
+            if (size > PARTIAL_BYTES) {
+                buffer.clear();
+                readFully(channel, buffer, Math.max(PARTIAL_BYTES, size - PARTIAL_BYTES));
+                digest.update(buffer.flip());
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Hashes the whole content of a file
+     * @param item the media item to hash
+     * @param size the size of the file in bytes
+     * @return the hash as a hex string
+     * @throws IOException if the file couldn't be read
+     */
+    private static String fullHash(MediaItem item, long size) throws IOException {
+        MessageDigest digest = newDigest();
+        try (FileChannel channel = FileChannel.open(new File(item.getPath()).toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+            while (channel.read(buffer) != -1) {
+                //Stop part way through a large file if the search has been cancelled
+                if (Thread.currentThread().isInterrupted()) throw new IOException("Hashing cancelled");
+                digest.update(buffer.flip());
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Reads from a position in a file until the buffer is full or the file ends
+     * @param channel the file to read
+     * @param buffer the buffer to fill
+     * @param position the position in the file to start reading from
+     * @throws IOException if the file couldn't be read
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read == -1) return;
+            position += read;
+        }
+    }
+
+    /**
+     * Creates the digest used for hashing files
+     * @return a SHA-256 MessageDigest
+     */
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            //Every Java platform has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Shows the latest progress, ran on the event thread
+     * @param updates progress updates sent from the background thread
+     */
+    @Override
+    protected void process(List<Progress> updates) {
+        Progress latest = updates.get(updates.size() - 1);
+        this.listener.progress(latest.stage, latest.done, latest.total);
+    }
+
+    /**
+     * Gives the groups found to the listener, ran on the event thread
+     */
+    @Override
+    protected void done() {
+        List<List<MediaItem>> groups;
+        try {
+            groups = this.isCancelled() ? new ArrayList<>() : this.get();
+        } catch (Exception e) {
+            //Something went wrong so nothing can be reported as a duplicate
+            groups = new ArrayList<>();
+        }
+        this.listener.finished(groups, this.isCancelled());
+    }
+}
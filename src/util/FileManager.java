@@ -1,36 +1,77 @@
 package util;
 
-import java.io.File;
-import java.io.FileWriter;
+import javax.swing.SwingUtilities;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.prefs.Preferences;
-import java.util.stream.Collectors;
 
 public class FileManager {
+    private static final int DEFAULT_AUTOSAVE_SECONDS = 60; //Autosave delay used until the user picks one
+    public static final int AUTOSAVE_MAX_WAIT_FACTOR = 5; //Number of delays changes can keep coming for before they are saved anyway
+    public static final int MAX_AUTOSAVE_SECONDS = 24 * 60 * 60; //Longest autosave delay allowed, one day
     private File file; //File that the media library is currently saving to
     private final List<MediaItem> media; //All media currently being managed
-    private final Map<String, List<MediaItem>> playlists; //All playlists being managed
-    private final List<String> validFileTypes; //List of supported file types
+    private final Map<String, Playlist> playlists; //All playlists being managed, in the order they were made
+    private final PathIndex paths; //Media items by their normalised absolute path, without storing the paths
+    private final Map<PathTrie.Node, List<MediaItem>> folderMedia; //Media items in each folder, by normalised folder
+    private final SearchIndex searchIndex; //Trigrams of every media path, used to search the media
+    private final ExecutorService probePool; //Worker threads used to read the metadata of media files
+    private final MetadataCache cache; //Metadata of media files that have already been probed
+    private final List<MediaListener> listeners; //Get told about every change to the media
+    private File lastLibrary; //Library file that was open last time the application was used, null if none
+    private LibraryLoader loader; //Loader reading a library in the background, null if one has never been started
+    private boolean loading; //If a library is currently being loaded in the background
+    private FolderScanner scanner; //Scanner searching a folder for media, null if no scan is running
+    private final List<Path> watchedFolders; //Folders kept in sync with the library while it is open
+    private FolderWatcher watcher; //Watches the watched folders for changes, null if none are being watched
+    private boolean binary; //If the library file is in the binary format rather than CSV
+    private final ExecutorService journalWriter; //Single thread every journal read and write is done on
+    private Journal journal; //Log of the changes made since the library file was written, null if no library is open
+    private boolean replaying; //If changes from the journal are being applied, so they aren't logged again
+    private final Autosave autosave; //Saves the library in the background a while after it changes
+    private long changeCount; //Number of changes made, so an autosave can tell if more were made while it ran
+    private int nextOrdinal; //Ordinal given to the next media item added to the library
+    private int duplicateRows; //Rows from the library file whose path is already indexed by an earlier row
     private boolean changesMade;
 
     /**
      * Gets the last opened file from the Java Preferences API and checks if it still exists
-     * if so it will set the file as the one opened in the media library, otherwise will clear the
+     * if so it will be remembered so it can be loaded with load, otherwise will clear the
      * preference.
      */
     public FileManager() {
         //Initialise the class properties
         this.media = new ArrayList<>();
-        this.playlists = new HashMap<>();
-        this.validFileTypes = new ArrayList<>();
+        this.playlists = new LinkedHashMap<>();
+        //Every function of the index is synchronized so scans can skip files that are already managed while walking
+        //folders in the background, anything replacing it has to be safe to read from other threads too
+        this.paths = new PathIndex();
+        this.folderMedia = new HashMap<>();
+        this.searchIndex = new SearchIndex();
         this.changesMade = false;
+        this.cache = new MetadataCache();
+        this.listeners = new ArrayList<>();
+        this.watchedFolders = new ArrayList<>();
+        this.autosave = new Autosave(this);
 
-        //Add all the currently supported file types to the list
-        validFileTypes.add("wav");
-        validFileTypes.add("mp4");
-        validFileTypes.add("png");
-        validFileTypes.add("jpg");
-        validFileTypes.add("jpeg");
+        //Probing is mostly waiting on the disk, so a fixed pool sized to the cpu count keeps the disk busy
+        //without starting thousands of threads. Daemon threads so the pool never stops the application closing
+        this.probePool = Executors.newFixedThreadPool(ProbeRegistry.WORKER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "media-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        //One thread so journal writes happen in the order the changes were made, across libraries too
+        this.journalWriter = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "library-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
 
         //Checks the preferences saved for this class and gets the fileDir saved
         Preferences prefs = Preferences.userRoot().node(this.getClass().getName());
@@ -44,9 +85,288 @@ public class FileManager {
             return;
         }
 
-        //Set the file property to last opened file, if this fails clear the preference to avoid further error
-        boolean success = this.setFile(file);
-        if (!success) prefs.remove("libraryDir");
+        //Remember the last opened file, loading it is left to the dashboard so it can show the rows as they load
+        this.lastLibrary = file;
+    }
+
+    /**
+     * Starts loading a media library file in the background. Rows are added to the media list in batches as
+     * they are read and their metadata is filled in once it has been probed.
+     * @param file the file containing the media library information
+     * @param listener gets told on the Swing event thread about rows being added and updated
+     * @return the loader that is reading the file
+     */
+    public LibraryLoader load(File file, LibraryLoader.Listener listener) {
+        //Stop any load that is still running so it doesn't add to the new library
+        this.cancelLoad();
+        this.clearLibrary();
+        this.loading = true;
+        this.loader = new LibraryLoader(this, file, listener);
+        this.loader.execute();
+        return this.loader;
+    }
+
+    /**
+     * Called by the LibraryLoader once it has finished reading a file
+     * @param file the file that was being loaded
+     * @param success if the file was read successfully
+     * @param journal the changes read from the libraries journal, null if the file couldn't be read
+     * @param probed media items for the files added in the journal, keyed by path
+     */
+    void finishLoad(File file, boolean success, Journal.Contents journal, Map<String, MediaItem> probed) {
+        this.loading = false;
+        Preferences prefs = Preferences.userRoot().node(this.getClass().getName());
+        if (success) {
+            //Set the preference to the most recently opened file and make it the currently managed file
+            prefs.put("libraryDir", file.getAbsolutePath());
+            this.file = file;
+            this.changesMade = false;
+            try {
+                //Saves keep the library in the format it was opened in
+                this.binary = LibraryFile.isBinary(file);
+            } catch (IOException e) {
+                this.binary = false;
+            }
+            //Bring the library up to date with the changes made since its file was last written
+            this.openJournal(journal, probed);
+            this.startWatching();
+        } else if (file.getAbsolutePath().equals(prefs.get("libraryDir", null))) {
+            //The remembered file can't be read anymore so clear the preference to avoid further error
+            prefs.remove("libraryDir");
+        }
+    }
+
+    /**
+     * Stops the library currently being loaded in the background, if there is one
+     */
+    private void cancelLoad() {
+        if (this.loader != null) this.loader.cancel(true);
+        this.loading = false;
+        //A scan would add its media to the wrong library so stop that too
+        if (this.scanner != null) this.scanner.cancel(true);
+        this.scanner = null;
+    }
+
+    /**
+     * Starts searching a folder and all its sub folders for media in the background.
+     * The media found is added to the library in batches as it is probed.
+     * @param dir the folder to scan
+     * @param listener gets told on the Swing event thread about the progress of the scan
+     * @return the scanner searching the folder, which can be cancelled
+     */
+    public FolderScanner scan(File dir, FolderScanner.Listener listener) {
+        this.scanner = new FolderScanner(this, dir.toPath(), listener);
+        this.scanner.execute();
+        return this.scanner;
+    }
+
+    /**
+     * Checks if a folder is currently being scanned
+     * @return true if a scan is running, false otherwise
+     */
+    public boolean isScanning() {
+        return this.scanner != null;
+    }
+
+    /**
+     * Checks if a scanner is the one currently allowed to add media to the library
+     * @param scanner the scanner to check
+     * @return true if it is the running scan, false if it has finished or been replaced
+     */
+    boolean isCurrentScan(FolderScanner scanner) {
+        return this.scanner == scanner;
+    }
+
+    /**
+     * Called by a FolderScanner once it has finished or been cancelled
+     * @param scanner the scanner that finished
+     */
+    void finishScan(FolderScanner scanner) {
+        if (this.scanner != scanner) return;
+        this.scanner = null;
+        //A folder that has been scanned completely is kept in sync from now on
+        if (!scanner.isCancelled()) this.watchFolder(scanner.getRoot().toFile());
+    }
+
+    /**
+     * Gets the sidecar file listing the folders watched for a library file
+     * @param library the media library file
+     * @return the watched folders file next to the library
+     */
+    private static File watchFileFor(File library) {
+        return new File(library.getPath() + ".watch");
+    }
+
+    /**
+     * Starts watching the folders saved for the current library file
+     */
+    private void startWatching() {
+        File watchFile = watchFileFor(this.file);
+        if (!watchFile.exists()) return;
+        try {
+            for (String line : Files.readAllLines(watchFile.toPath(), StandardCharsets.UTF_8)) {
+                //Folders that have been deleted or moved since are just ignored
+                Path folder = Path.of(line);
+                if (!Files.isDirectory(folder)) continue;
+                this.watchedFolders.add(folder);
+                this.getWatcher().watch(folder);
+            }
+        } catch (IOException e) {
+            //Without the list nothing can be watched, the library still works as normal
+        }
+    }
+
+    /**
+     * Stops watching all folders, the saved list is kept so they are watched again when the library is reopened
+     */
+    private void closeWatcher() {
+        if (this.watcher != null) this.watcher.close();
+        this.watcher = null;
+        this.watchedFolders.clear();
+    }
+
+    /**
+     * Gets the watcher, creating it the first time a folder is watched
+     * @return the folder watcher
+     * @throws IOException if the platform doesn't support watching folders
+     */
+    private FolderWatcher getWatcher() throws IOException {
+        if (this.watcher == null) this.watcher = new FolderWatcher(this);
+        return this.watcher;
+    }
+
+    /**
+     * Keeps a folder and all its sub folders in sync with the library. Media files created, deleted
+     * or modified in it are added, removed or updated automatically. The folder is saved next to the
+     * library file so it is watched again the next time the library is opened.
+     * @param dir the folder to watch
+     * @return true if the folder is now being watched, false if it was already or it can't be watched
+     */
+    public boolean watchFolder(File dir) {
+        if (!this.hasFile()) return false;
+        Path folder = dir.toPath().toAbsolutePath().normalize();
+        //A folder inside one already being watched is covered by that one
+        for (Path watched : this.watchedFolders) {
+            if (folder.startsWith(watched)) return false;
+        }
+
+        try {
+            this.getWatcher().watch(folder);
+            this.watchedFolders.add(folder);
+            this.saveWatchedFolders();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Stops watching every folder for the current library
+     * @return the number of folders that were being watched
+     */
+    public int unwatchFolders() {
+        int count = this.watchedFolders.size();
+        this.closeWatcher();
+        if (this.hasFile()) watchFileFor(this.file).delete();
+        return count;
+    }
+
+    /**
+     * Gets the folders being kept in sync with the library
+     * @return the watched folders
+     */
+    public List<Path> getWatchedFolders() {
+        return this.watchedFolders;
+    }
+
+    /**
+     * Writes the watched folders next to the library file
+     * @throws IOException if the list couldn't be written
+     */
+    private void saveWatchedFolders() throws IOException {
+        AtomicFile.write(watchFileFor(this.file), out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            for (Path folder : this.watchedFolders) {
+                writer.write(folder.toString());
+                writer.write("\n");
+            }
+            writer.flush();
+        });
+    }
+
+    /**
+     * Applies a batch of changes found in the watched folders, called by the FolderWatcher on the event thread
+     * @param added media files that were created
+     * @param modified newly probed media for files that were changed
+     * @param removed paths of media files or whole folders that were deleted
+     */
+    void applyFolderChanges(List<MediaItem> added, List<MediaItem> modified, List<String> removed) {
+        this.addMedia(added);
+
+        //Match the probed metadata to the items being managed, then update them in one pass of the media list
+        Map<MediaItem, MediaItem> updates = new HashMap<>();
+        for (MediaItem probed : modified) {
+            MediaItem item = this.paths.get(normalisePath(probed.getPath()));
+            if (item != null) updates.put(item, probed);
+        }
+        Set<MediaItem> deleted = new HashSet<>();
+        for (String dir : removed) {
+            String path = normalisePath(dir);
+            MediaItem item = this.paths.get(path);
+            if (item != null) {
+                deleted.add(item);
+                continue;
+            }
+            //Not a media file, so it might have been a folder, in which case everything inside is gone too
+            deleted.addAll(this.mediaUnder(path));
+        }
+
+        if (!updates.isEmpty()) {
+            for (int i = 0; i < this.media.size(); i++) {
+                MediaItem probed = updates.get(this.media.get(i));
+                if (probed == null) continue;
+                this.media.get(i).update(probed);
+                this.fireMediaUpdated(i, i);
+            }
+        }
+        //Everything that was deleted is taken out in one pass, however many files went
+        this.delMedia(deleted);
+    }
+
+    /**
+     * Clear the media list and playlists of the previously loaded media file
+     */
+    private void clearLibrary() {
+        this.autosave.cancel();
+        this.closeWatcher();
+        if (this.journal != null) this.journal.close();
+        this.journal = null;
+        this.media.clear();
+        this.playlists.clear();
+        this.nextOrdinal = 0;
+        this.duplicateRows = 0;
+        this.paths.clear();
+        this.folderMedia.clear();
+        this.searchIndex.clear();
+    }
+
+    /**
+     * Adds a media item read from the library file to the media list and the playlists it is in
+     * @param media the media item for the entry
+     * @param mediaInfo the entry from the file, stored as fileDir, playlist1, playlist2...
+     */
+    void addEntry(MediaItem media, String[] mediaInfo) {
+        this.media.add(media);
+        //A file that already lists the same path twice keeps both rows, the first is the one indexed
+        String path = normalisePath(media.getPath());
+        if (this.paths.putIfAbsent(path, media) != null) this.duplicateRows++;
+        this.addToFolder(path, media);
+        media.setOrdinal(this.nextOrdinal++);
+        this.searchIndex.add(media);
+        //if entry is more than 1 element it is in playlists too, making the playlist if it doesn't exist yet
+        for (int i = 1; i < mediaInfo.length; i++) {
+            this.playlists.computeIfAbsent(mediaInfo[i], name -> new Playlist()).add(media);
+        }
     }
 
 
@@ -56,42 +376,36 @@ public class FileManager {
      * @return true if file was read successfully, false otherwise
      */
     public boolean setFile(File file) {
-        //Clear the media list and playlists of the previously loaded media file
-        media.clear();
-        playlists.clear();
+        //Stop any background load and clear the media list and playlists of the previously loaded media file
+        this.cancelLoad();
+        this.clearLibrary();
+        //Load the metadata saved from the last time this library was open so unchanged files aren't probed
+        this.cache.load(file);
         try {
-            Scanner reader = new Scanner(file); //Create a scanner for the file
-            //If this heading isn't in the file then it's not a valid media library file
-            if (!reader.nextLine().equals("[MediaLibraryOrganiserFile]")) return false;
+            //Read every entry first, the slow metadata probing is then done for all of them at once
+            List<String[]> entries = new ArrayList<>();
+            boolean library = LibraryFile.read(file, this.cache, (mediaInfo, cached) -> {
+                //if it is not a supported file type then move onto the next file
+                if (!this.nonValidFile(mediaInfo[0])) entries.add(mediaInfo);
+                return true;
+            });
+            if (!library) return false;
 
-            while (reader.hasNextLine()) {
-                //Each line contains info for a new piece of media
-                //stored as fileDir, playlist1, playlist2...
-                String[] mediaInfo = reader.nextLine().split(",");
-                String fDir = mediaInfo[0];
+            //Create a task for each entry, invokeAll gives the futures back in the same order as the tasks
+            //so the media list keeps the order of the rows in the file
+            List<Callable<MediaItem>> tasks = new ArrayList<>(entries.size());
+            for (String[] entry : entries) tasks.add(() -> this.probe(entry[0]));
+            List<Future<MediaItem>> results = this.probePool.invokeAll(tasks);
 
-                //if it is not a supported file type then move onto the next file
-                if (this.nonValidFile(fDir)) continue;
-
-                //Create the media item and add it to the media list
-                MediaItem media = new MediaItem(mediaInfo);
-                this.media.add(media);
-                //if entry is more than 1 element it is in playlists too
-                if (mediaInfo.length > 1) {
-                    for (int i = 1; i < mediaInfo.length; i++) {
-                        //Check if the playlist already exists
-                        List<MediaItem> playlist = this.playlists.get(mediaInfo[i]);
-                        if (playlist != null) playlist.add(media); //It exists so just add the media item to the list
-                        else {
-                            //Playlist doesn't exist yet so make a new list with the media item and create the playlist
-                            playlist = new ArrayList<>();
-                            playlist.add(media);
-                            this.playlists.put(mediaInfo[i], playlist);
-                        }
-                    }
-                }
+            for (int i = 0; i < entries.size(); i++) {
+                //Get the media item created by the pool and add it to the media list and its playlists
+                this.addEntry(results.get(i).get(), entries.get(i));
             }
 
+            //If anything had to be probed then update the cache so it doesn't have to be done next time
+            this.binary = LibraryFile.isBinary(file);
+            if (!this.binary && this.cache.hasChanges()) this.cache.save(file, this.media);
+
             //Set the preference to the most recently opened file
             Preferences prefs = Preferences.userRoot().node(this.getClass().getName());
             prefs.put("libraryDir", file.getAbsolutePath());
@@ -99,6 +413,8 @@ public class FileManager {
             //Set the currently managed file to the one just read from and return true to show success
             this.file = file;
             this.changesMade = false;
+            this.openJournal(Journal.read(file, this.journalWriter), null);
+            this.startWatching();
             return true;
         } catch (Exception e) {
             //Something went wrong so return false so error can be displayed
@@ -110,11 +426,181 @@ public class FileManager {
     /**
      * Add new media item to the library
      * @param dir Directory of the new media file to manage
+     * @return true if the media was added, false if the file is already in the library
      */
-    public void addMedia(String dir) {
-        this.changesMade = true; //Mark that changes have been made for a later save prompt
-        MediaItem newItem = new MediaItem(new String[]{dir});
+    public boolean addMedia(String dir) {
+        //Files already being managed are rejected so the library never holds the same file twice
+        if (this.isManaged(dir)) return false;
+        this.markChanged(); //Mark that changes have been made for a later save prompt
+        MediaItem newItem = this.probe(dir);
         this.media.add(newItem);
+        String path = normalisePath(dir);
+        this.paths.put(path, newItem);
+        this.addToFolder(path, newItem);
+        newItem.setOrdinal(this.nextOrdinal++);
+        this.searchIndex.add(newItem);
+        this.log(new Journal.Record(Journal.ADD, dir));
+        this.fireMediaInserted(this.media.size() - 1, this.media.size() - 1);
+        return true;
+    }
+
+    /**
+     * Add media items that have already been probed to the library, any already in the library are skipped
+     * @param items the new media items
+     * @return the number of items that were added
+     */
+    public int addMedia(List<MediaItem> items) {
+        int first = this.media.size();
+        for (MediaItem item : items) {
+            //putIfAbsent both checks for and records the path, so duplicates within the batch are caught too
+            String path = normalisePath(item.getPath());
+            if (this.paths.putIfAbsent(path, item) == null) {
+                this.media.add(item);
+                this.addToFolder(path, item);
+            }
+        }
+        int added = this.media.size() - first;
+        if (added == 0) return 0;
+
+        this.markChanged();
+        Journal.Record[] records = new Journal.Record[added];
+        for (int i = 0; i < added; i++) {
+            MediaItem item = this.media.get(first + i);
+            item.setOrdinal(this.nextOrdinal++);
+            this.searchIndex.add(item);
+            records[i] = new Journal.Record(Journal.ADD, item.getPath());
+        }
+        this.log(records);
+        //One event for the whole batch so the table only updates once
+        this.fireMediaInserted(first, this.media.size() - 1);
+        return added;
+    }
+
+    /**
+     * Gets every media item inside a folder or any of the folders inside it
+     * @param folder path of the folder
+     * @return the media items under the folder, grouped by the folder they are in
+     */
+    public List<MediaItem> mediaUnder(String folder) {
+        List<MediaItem> found = new ArrayList<>();
+        PathTrie.Node node = PathTrie.find(normalisePath(folder));
+        if (node == null) return found; //No media has ever been in the folder
+        //Only the folders under this one are visited, rather than checking the path of every media item
+        Deque<PathTrie.Node> folders = new ArrayDeque<>();
+        folders.push(node);
+        while (!folders.isEmpty()) {
+            PathTrie.Node next = folders.pop();
+            List<MediaItem> inFolder = this.folderMedia.get(next);
+            if (inFolder != null) found.addAll(inFolder);
+            for (PathTrie.Node child : next.getChildren()) folders.push(child);
+        }
+        return found;
+    }
+
+    /**
+     * Adds a media item to the index of the media in each folder
+     * @param path normalised path of the media file
+     * @param item the media item
+     */
+    private void addToFolder(String path, MediaItem item) {
+        this.folderMedia.computeIfAbsent(PathTrie.folderOf(path), folder -> new ArrayList<>()).add(item);
+    }
+
+    /**
+     * Removes media items from the index of the media in each folder, each folder they were in is only
+     * looked through once
+     * @param folders the folders the media items were in
+     * @param items the media items
+     */
+    private void removeFromFolders(Set<PathTrie.Node> folders, Set<MediaItem> items) {
+        for (PathTrie.Node folder : folders) {
+            List<MediaItem> inFolder = this.folderMedia.get(folder);
+            if (inFolder == null) continue;
+            inFolder.removeIf(items::contains);
+            if (inFolder.isEmpty()) this.folderMedia.remove(folder);
+        }
+    }
+
+    /**
+     * Indexes a duplicate row left behind when the row indexed for its path was removed, so the path is still
+     * known to be in the library and scanning it again doesn't add a third row
+     * @param path normalised path of the removed row
+     */
+    private void indexDuplicate(String path) {
+        List<MediaItem> inFolder = this.folderMedia.get(PathTrie.folderOf(path));
+        if (inFolder == null) return;
+        for (MediaItem item : inFolder) {
+            if (!normalisePath(item.getPath()).equals(path)) continue;
+            this.paths.put(path, item);
+            this.duplicateRows--;
+            return;
+        }
+    }
+
+    /**
+     * Finds the media whose path contains some text, using the search index rather than checking every path
+     * @param text the text to search for, case is ignored
+     * @return the matching media items in the order of the media list
+     */
+    public List<MediaItem> search(String text) {
+        return this.searchIndex.search(text);
+    }
+
+    /**
+     * Checks if a single media item matches a search, for media added after the search was made
+     * @param item the media item
+     * @param text the text to search for, case is ignored
+     * @return true if the items path contains the text
+     */
+    public boolean matchesSearch(MediaItem item, String text) {
+        return SearchIndex.matches(item, text);
+    }
+
+    /**
+     * Checks if a media item is still in the library, in constant time
+     * @param item the media item
+     * @return true if the item hasn't been removed
+     */
+    public boolean isInLibrary(MediaItem item) {
+        return this.searchIndex.contains(item);
+    }
+
+    /**
+     * Checks if a file is already being managed by the library
+     * @param dir Directory of the media file
+     * @return true if the file is already in the library, false otherwise
+     */
+    public boolean isManaged(String dir) {
+        return this.paths.containsKey(normalisePath(dir));
+    }
+
+    /**
+     * Gets the form of a path used to spot duplicates, so different ways of writing the same path match
+     * @param dir Directory of the media file
+     * @return the absolute path with any . and .. removed
+     */
+    private static String normalisePath(String dir) {
+        return new File(dir).toPath().toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Creates the media item for a file, using the cached metadata if the file hasn't changed
+     * @param dir Directory of the media file
+     * @return MediaItem for the file
+     */
+    MediaItem probe(String dir) {
+        //Get the size and modified time before probing, if the file changes during the probe it won't match next time
+        File file = new File(dir);
+        long bytes = file.length();
+        long modified = file.lastModified();
+
+        MediaItem item = this.cache.get(dir, bytes, modified);
+        if (item != null) return item;
+
+        //Not cached or the file has changed, so read the metadata from the file and cache it
+        item = new MediaItem(new String[]{dir});
+        this.cache.put(item, bytes, modified);
+        return item;
     }
 
     /**
@@ -122,8 +608,77 @@ public class FileManager {
      * @param index index of the media item to be removed
      */
     public void delMedia(int index) {
-        this.changesMade = true; //Update changes made for the save prompt
-        this.media.remove(index);
+        this.delMedia(Set.of(this.media.get(index)));
+    }
+
+    /**
+     * Removes many media items at once. The media list is closed up in a single pass and the items are taken out
+     * of each playlist with one pass of a bit set of their ordinals, so removing any number of items takes one
+     * pass of the library plus one of the bit set for each playlist, and listeners are told about all of them
+     * together
+     * @param items the media items to remove, any not in the library are ignored
+     * @return the number of items that were removed
+     */
+    public int delMedia(Collection<MediaItem> items) {
+        Set<MediaItem> removing = items instanceof Set ? (Set<MediaItem>) items : new HashSet<>(items);
+        if (removing.isEmpty()) return 0;
+
+        //Close up the media list, remembering each removed item and the index it had
+        int[] indexes = new int[Math.min(removing.size(), this.media.size())];
+        MediaItem[] removed = new MediaItem[indexes.length];
+        int count = 0;
+        int kept = 0;
+        for (int i = 0; i < this.media.size(); i++) {
+            MediaItem item = this.media.get(i);
+            if (count < indexes.length && removing.contains(item)) {
+                indexes[count] = i;
+                removed[count++] = item;
+            } else {
+                this.media.set(kept++, item);
+            }
+        }
+        if (count == 0) return 0;
+        this.media.subList(kept, this.media.size()).clear();
+        if (count < indexes.length) {
+            indexes = Arrays.copyOf(indexes, count);
+            removed = Arrays.copyOf(removed, count);
+        }
+        this.markChanged(); //Update changes made for the save prompt
+
+        Set<MediaItem> gone = new HashSet<>(Arrays.asList(removed));
+        Set<PathTrie.Node> folders = new HashSet<>();
+        BitSet ordinals = new BitSet(); //Ordinals of the removed items, for taking them out of every playlist at once
+        List<String> unowned = new ArrayList<>(); //Paths whose indexed row was removed while a duplicate may be left
+        Journal.Record[] records = new Journal.Record[count];
+        for (int i = 0; i < count; i++) {
+            MediaItem item = removed[i];
+            //Only remove the path if it points at this item, a duplicate row from the file doesn't own it
+            String path = normalisePath(item.getPath());
+            if (!this.paths.remove(path, item)) this.duplicateRows--;
+            else if (this.duplicateRows > 0) unowned.add(path);
+            folders.add(PathTrie.folderOf(path));
+            this.searchIndex.remove(item);
+            if (item.getOrdinal() >= 0) ordinals.set(item.getOrdinal());
+            //The index is stored as it would be if the items were removed one at a time from the first, so
+            //replaying removes the same rows if the file lists a path twice
+            records[i] = new Journal.Record(Journal.DELETE, item.getPath(), String.valueOf(indexes[i] - i));
+        }
+        this.removeFromFolders(folders, gone);
+        for (String path : unowned) this.indexDuplicate(path);
+        this.log(records);
+        for (MediaListener listener : this.listeners) {
+            if (count == 1) listener.mediaRemoved(indexes[0], indexes[0]);
+            else listener.mediaRemoved(indexes);
+        }
+
+        //Clear the items' bits in every playlist, each playlist is only closed up when it is next read
+        for (Map.Entry<String, Playlist> entry : this.playlists.entrySet()) {
+            //A single item only has its own bit cleared, rather than going over the words of the bit set
+            boolean changed = count == 1 ? entry.getValue().remove(removed[0]) : entry.getValue().removeAll(ordinals) > 0;
+            if (!changed) continue;
+            for (MediaListener listener : this.listeners) listener.playlistMediaRemoved(entry.getKey());
+        }
+        return count;
     }
 
     /**
@@ -131,38 +686,244 @@ public class FileManager {
      * @return true if file was written to successfully, false otherwise
      */
     public boolean save() {
-        //Using builder since string will continue to get more strings added on
-        StringBuilder builder = new StringBuilder("[MediaLibraryOrganiserFile]\n");
-        for (MediaItem item : this.media) {
-            //Get all playlists containing the item
-            List<String> playlists = this.getMediasPlaylists(item);
-            //Add its name to the builder followed by all the playlists it is in
-            builder.append(item.getPath());
-            if (playlists.size() > 0) {
-                builder.append(",").append(String.join(",", playlists));
-            }
-            builder.append("\n"); //End line with \n so the next items entry will be on a new line
+        boolean saved = waitFor(this.saveInBackground());
+        //A failed commit leaves the journal unusable, so trying again rewrites the whole library instead
+        if (!saved && this.journal != null && this.journal.hasFailed()) saved = waitFor(this.saveInBackground());
+        if (saved) this.changesMade = false;
+        return saved;
+    }
+
+    /**
+     * Saves the library if it has changed, called by the autosave timer on the event thread.
+     * The save happens on the journal writer thread so it never holds up the user interface.
+     */
+    void autosave() {
+        //A library still loading isn't complete yet, the timer gets restarted by the next change
+        if (this.file == null || !this.changesMade || this.loading) return;
+
+        long saving = this.changeCount;
+        File saved = this.file;
+        Future<Boolean> result = this.saveInBackground();
+        this.journalWriter.submit(() -> {
+            //Queued behind the save on the same thread, so the result is already there
+            boolean success = waitFor(result);
+            SwingUtilities.invokeLater(() -> {
+                //Only clear the flag if nothing has changed since, and it is still the same library open
+                if (success && this.changeCount == saving && saved.equals(this.file)) this.changesMade = false;
+            });
+        });
+    }
+
+    /**
+     * Starts saving the library on the journal writer thread
+     * @return gives true once the library has been saved, false if it couldn't be
+     */
+    private Future<Boolean> saveInBackground() {
+        //Every change is already in the journal, so saving only has to mark them as committed
+        if (this.journal != null && !this.journal.hasFailed()) {
+            Future<Boolean> committed = this.journal.commit();
+            //The journal has outgrown the library, so rewrite the library from a snapshot in the background
+            if (this.journal.needsCompaction()) this.journal.compact(this.snapshot());
+            return committed;
         }
 
+        //No journal to commit to, so write the whole library and start a new journal once it is written
+        Journal.Snapshot snapshot = this.snapshot();
+        if (this.journal != null) return this.journal.compact(snapshot);
+        return this.journalWriter.submit(() -> {
+            try {
+                snapshot.write();
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Copies the library so it can be written to its file on another thread, changes made while it is being
+     * written don't end up in it
+     * @return writes the copy to the library file
+     */
+    private Journal.Snapshot snapshot() {
+        File file = this.file;
+        boolean binary = this.binary;
+        List<MediaItem> media = new ArrayList<>(this.media);
+        Map<MediaItem, Set<String>> playlists = this.playlistsByMedia();
+        return () -> {
+            //Each row is streamed straight to a temp file which only replaces the library once it is all on disk,
+            //so the library is never held in memory twice and a crash can't leave it half written
+            LibraryFile.write(file, binary, media, playlists, this.cache);
+            //A binary library holds its own metadata, otherwise save the metadata for it next to the library.
+            //The cache failing isn't a failed save
+            if (!binary) this.cache.save(file, media);
+        };
+    }
+
+    /**
+     * Waits for a save to finish
+     * @param result the result of the save
+     * @return true if the save succeeded, false if it failed or the wait was interrupted
+     */
+    private static boolean waitFor(Future<Boolean> result) {
         try {
-            //Attempt to write the current media library to the library file
-            FileWriter writer = new FileWriter(this.file);
-            writer.write(builder.toString());
-            writer.close();
-            return true; //If success return true other return false so error can be handled
+            return result.get();
         } catch (Exception e) {
             return false;
         }
     }
 
+    /**
+     * Marks that the library has changed since it was last saved, and lets the autosave know
+     */
+    private void markChanged() {
+        this.changesMade = true;
+        this.changeCount++;
+        //Changes replayed from the journal were made in an earlier session, so leave those to the save prompt
+        if (!this.replaying) this.autosave.changed();
+    }
+
+    /**
+     * @return the number of seconds changes have to stop for before the library is saved automatically,
+     * 0 if autosave is off
+     */
+    public int getAutosaveDelay() {
+        Preferences prefs = Preferences.userRoot().node(this.getClass().getName());
+        //A delay saved before there was a limit is brought back within it
+        return Math.min(prefs.getInt("autosaveSeconds", DEFAULT_AUTOSAVE_SECONDS), MAX_AUTOSAVE_SECONDS);
+    }
+
+    /**
+     * Sets how long changes have to stop for before the library is saved automatically, remembered for next time
+     * @param seconds the number of seconds, 0 to turn autosave off, anything over MAX_AUTOSAVE_SECONDS is cut
+     * down to it
+     */
+    public void setAutosaveDelay(int seconds) {
+        Preferences prefs = Preferences.userRoot().node(this.getClass().getName());
+        prefs.putInt("autosaveSeconds", Math.max(0, Math.min(seconds, MAX_AUTOSAVE_SECONDS)));
+        if (seconds <= 0) this.autosave.cancel();
+    }
+
+    /**
+     * Throws away the changes made since the library was last saved, for when the user chooses not to save them.
+     * The media and playlists aren't changed, the library should be closed or opened again after this.
+     */
+    public void discardChanges() {
+        if (this.journal != null) this.journal.discard();
+        this.changesMade = false;
+    }
+
+    /**
+     * Starts logging changes to the journal of the library just opened, after replaying the changes already in it
+     * @param contents the records read from the journal
+     * @param probed media items for the files added in the journal keyed by path, null to probe them here
+     */
+    private void openJournal(Journal.Contents contents, Map<String, MediaItem> probed) {
+        this.replaying = true;
+        try {
+            //Items deleted by a run of DELETE records, removed together when the run ends as a bulk delete is
+            //logged as one record for each item
+            Set<MediaItem> deleting = new LinkedHashSet<>();
+            for (Journal.Record record : contents.records) {
+                if (record.type == Journal.DELETE) {
+                    MediaItem item = this.findDeleted(record, deleting.size());
+                    if (item != null) deleting.add(item);
+                    continue;
+                }
+                this.delMedia(deleting);
+                deleting.clear();
+                this.replay(record, probed);
+            }
+            this.delMedia(deleting);
+        } finally {
+            this.replaying = false;
+        }
+        //Changes after the last commit weren't saved before the application stopped, so prompt to save them again
+        this.changesMade = contents.uncommitted() > 0;
+
+        this.journal = new Journal(this.file, this.journalWriter);
+        this.journal.open(contents);
+    }
+
+    /**
+     * Applies a change read from the journal, changes that have already been applied are skipped.
+     * Deletes are gathered up and applied by openJournal instead
+     * @param record the change to apply
+     * @param probed media items for the files added in the journal keyed by path, null to probe them here
+     */
+    private void replay(Journal.Record record, Map<String, MediaItem> probed) {
+        switch (record.type) {
+            case Journal.ADD -> {
+                String dir = record.values[0];
+                if (this.isManaged(dir)) return;
+                MediaItem item = probed == null ? null : probed.get(dir);
+                if (item == null) item = this.probe(dir);
+                this.addMedia(List.of(item));
+            }
+            case Journal.PLAYLIST -> {
+                List<MediaItem> playlist = new ArrayList<>();
+                for (int i = 1; i < record.values.length; i++) {
+                    MediaItem item = this.paths.get(normalisePath(record.values[i]));
+                    if (item != null) playlist.add(item);
+                }
+                this.addPlaylist(record.values[0], playlist);
+            }
+            case Journal.REMOVE_PLAYLIST -> this.removePlaylist(record.values[0]);
+            default -> {
+                //Commits don't change the library
+            }
+        }
+    }
+
+    /**
+     * Finds the media item a DELETE record from the journal removes, while earlier deletes in the same run
+     * haven't been removed from the media list yet
+     * @param record the DELETE record
+     * @param pending the number of items the earlier records in the run delete
+     * @return the media item, null if it has already been removed or isn't in the library
+     */
+    private MediaItem findDeleted(Journal.Record record, int pending) {
+        //The index is stored as if the earlier items had already been removed, and for a bulk delete they all
+        //came before it, so it is that many rows on while they are still in the list
+        int index = Integer.parseInt(record.values[1]) + pending;
+        if (index < this.media.size() && this.media.get(index).getPath().equals(record.values[0])) {
+            return this.media.get(index);
+        }
+        //Otherwise look the file up by path
+        return this.paths.get(normalisePath(record.values[0]));
+    }
+
+    /**
+     * Adds changes to the journal, unless they are being replayed from it
+     * @param records the changes made
+     */
+    private void log(Journal.Record... records) {
+        if (this.journal != null && !this.replaying) this.journal.append(records);
+    }
+
+    /**
+     * @return single thread executor every journal read and write is done on
+     */
+    ExecutorService getJournalWriter() {
+        return this.journalWriter;
+    }
+
     /**
      * Add new playlist to be managed
      * @param name the name to save the playlist as
      * @param media List of MediaItem that the playlist contains
      */
     public void addPlaylist(String name, List<MediaItem> media) {
-        this.changesMade = true; //New playlist added so update changes made
-        this.playlists.put(name, media);
+        this.markChanged(); //New playlist added so update changes made
+        Playlist playlist = new Playlist(media);
+        this.playlists.put(name, playlist);
+        String[] values = new String[playlist.getMedia().size() + 1];
+        values[0] = name;
+        for (int i = 0; i < playlist.getMedia().size(); i++) {
+            values[i + 1] = playlist.getMedia().get(i).getPath();
+        }
+        this.log(new Journal.Record(Journal.PLAYLIST, values));
+        for (MediaListener listener : this.listeners) listener.playlistChanged(name);
     }
 
     /**
@@ -170,8 +931,50 @@ public class FileManager {
      * @param name Playlist name to remove
      */
     public void removePlaylist(String name) {
-        this.changesMade = true; //Playlist removed so update changes made
-         this.playlists.remove(name);
+        this.markChanged(); //Playlist removed so update changes made
+        this.playlists.remove(name);
+        this.log(new Journal.Record(Journal.REMOVE_PLAYLIST, name));
+        for (MediaListener listener : this.listeners) listener.playlistChanged(name);
+    }
+
+    /**
+     * Adds a listener that gets told about every change made to the media
+     * @param listener the listener to add
+     */
+    public void addMediaListener(MediaListener listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Tells the listeners that media has been added to the media list
+     * @param first index of the first new item
+     * @param last index of the last new item
+     */
+    void fireMediaInserted(int first, int last) {
+        for (MediaListener listener : this.listeners) listener.mediaInserted(first, last);
+    }
+
+    /**
+     * Tells the listeners that the metadata of media in the media list has changed
+     * @param first index of the first updated item
+     * @param last index of the last updated item
+     */
+    void fireMediaUpdated(int first, int last) {
+        for (MediaListener listener : this.listeners) listener.mediaUpdated(first, last);
+    }
+
+    /**
+     * Gets the playlists each media item is in, for writing the library file
+     * @return the names of the playlists each media item is in, in the order the playlists were made
+     */
+    private Map<MediaItem, Set<String>> playlistsByMedia() {
+        Map<MediaItem, Set<String>> names = new HashMap<>();
+        for (Map.Entry<String, Playlist> entry : this.playlists.entrySet()) {
+            for (MediaItem item : entry.getValue().getMedia()) {
+                names.computeIfAbsent(item, k -> new LinkedHashSet<>()).add(entry.getKey());
+            }
+        }
+        return names;
     }
 
     /**
@@ -180,7 +983,49 @@ public class FileManager {
      * @return ArrayList of the media that belongs to the playlist
      */
     public List<MediaItem> getPlaylist(String name) {
-        return this.playlists.get(name);
+        Playlist playlist = this.playlists.get(name);
+        return playlist == null ? null : playlist.getMedia();
+    }
+
+    /**
+     * Closes up the media that has been removed from a playlist since it was last read
+     * @param name the name of the playlist
+     * @return the indexes the removed media had in the playlist, sorted, empty if there was none or the
+     * playlist doesn't exist
+     */
+    public int[] compactPlaylist(String name) {
+        Playlist playlist = this.playlists.get(name);
+        return playlist == null ? new int[0] : playlist.compact();
+    }
+
+    /**
+     * Checks if a media item is in a playlist without searching the playlist
+     * @param name the name of the playlist
+     * @param item the media item
+     * @return true if the item is in the playlist, false if it isn't or the playlist doesn't exist
+     */
+    public boolean inPlaylist(String name, MediaItem item) {
+        Playlist playlist = this.playlists.get(name);
+        return playlist != null && playlist.contains(item);
+    }
+
+    /**
+     * Combines two playlists into the media for a new one
+     * @param first name of the first playlist, its order is kept
+     * @param operation Union for media in either, Intersection for media in both or Difference for media
+     *                  only in the first
+     * @param second name of the second playlist
+     * @return the combined media, null if either playlist doesn't exist
+     */
+    public List<MediaItem> combinePlaylists(String first, String operation, String second) {
+        Playlist a = this.playlists.get(first);
+        Playlist b = this.playlists.get(second);
+        if (a == null || b == null) return null;
+        return switch (operation) {
+            case "Union" -> a.union(b);
+            case "Intersection" -> a.intersect(b);
+            default -> a.difference(b);
+        };
     }
 
     /**
@@ -191,6 +1036,38 @@ public class FileManager {
         return this.media;
     }
 
+    /**
+     * Checks if a library is still being loaded in the background
+     * @return true if a load is running, false otherwise
+     */
+    public boolean isLoading() {
+        return this.loading;
+    }
+
+    /**
+     * Gets the library file that was open the last time the application was used
+     * @return the last opened library file, null if there isn't one
+     */
+    public File getLastLibrary() {
+        return this.lastLibrary;
+    }
+
+    /**
+     * Gets the worker threads used to probe media files
+     * @return the probe thread pool
+     */
+    ExecutorService getProbePool() {
+        return this.probePool;
+    }
+
+    /**
+     * Gets the cache of metadata for the media files
+     * @return the metadata cache
+     */
+    MetadataCache getCache() {
+        return this.cache;
+    }
+
     /**
      * Checks if a file is opened in the library manager
      * @return true if there is currently a file, false otherwise
@@ -205,10 +1082,8 @@ public class FileManager {
      * @return true if it isn't supported, false if supported
      */
     public boolean nonValidFile(String dir) {
-        //Get the file extension first
-        String fileType = dir.substring(dir.length() - 3).toLowerCase();
-        //check if it is a valid type
-        return !validFileTypes.contains(fileType);
+        //Supported types are the ones with a probe registered for their extension
+        return !ProbeRegistry.getDefault().isSupported(dir);
     }
 
     /**
@@ -233,9 +1108,11 @@ public class FileManager {
      * @return A list of strings containing the names of all the playlists that contain the item
      */
     public List<String> getMediasPlaylists(MediaItem item) {
-        return this.playlists.keySet()
-                .stream() //Turn the key set into a stream, so it can be filtered
-                .filter(k -> this.playlists.get(k).contains(item)) //Filter the playlists to ones that contain the item
-                .collect(Collectors.toList()); //Convert the stream to a list
+        //Check the bit set of each playlist rather than searching every playlist for it
+        List<String> names = new ArrayList<>();
+        for (Map.Entry<String, Playlist> entry : this.playlists.entrySet()) {
+            if (entry.getValue().contains(item)) names.add(entry.getKey());
+        }
+        return names;
     }
 }
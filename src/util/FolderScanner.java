@@ -0,0 +1,201 @@
+package util;
+
+import javax.swing.*;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Searches a folder and all of its sub folders for supported media files in the background.
+ * Folders are walked in parallel on a fork join pool, each media file found is probed on the
+ * FileManagers probe pool and the results are added to the FileManager in batches.
+ */
+public class FolderScanner extends SwingWorker<Integer, List<MediaItem>> {
+    private static final int BATCH_SIZE = 250; //Most media items added to the FileManager at a time
+    private static final long BATCH_DELAY = 200; //Most milliseconds probed media waits before being added
+
+    private final FileManager fileMan; //The FileManager the media is being added to
+    private final Path root; //The folder being scanned
+    private final Listener listener; //Gets told about the progress of the scan
+    private final AtomicInteger found; //Number of new media files found so far
+    private final AtomicInteger skipped; //Number of files skipped because they aren't a supported type
+    private final AtomicInteger duplicates; //Number of media files skipped because they're already in the library
+    private int added; //Number of media items added to the FileManager so far, only used on the event thread
+
+    /**
+     * Gets told about the progress of a scan, every function is called on the Swing event thread
+     */
+    public interface Listener {
+        /**
+         * Progress of the scan has changed
+         * @param found number of media files found so far
+         * @param added number of media files added to the library so far
+         */
+        void progress(int found, int added);
+
+        /**
+         * The scan has finished or been cancelled, everything found before a cancel has still been added
+         * @param added number of media files added to the library
+         * @param duplicates number of media files skipped because they were already in the library
+         * @param skipped number of files skipped because they aren't a supported type
+         * @param cancelled true if the scan was cancelled before it finished
+         */
+        void finished(int added, int duplicates, int skipped, boolean cancelled);
+    }
+
+    /**
+     * Creates a scanner for a folder, started by FileManager.scan
+     * @param fileMan the FileManager to add the media to
+     * @param root the folder to scan
+     * @param listener gets told about the progress of the scan
+     */
+    FolderScanner(FileManager fileMan, Path root, Listener listener) {
+        this.fileMan = fileMan;
+        this.root = root;
+        this.listener = listener;
+        this.found = new AtomicInteger();
+        this.skipped = new AtomicInteger();
+        this.duplicates = new AtomicInteger();
+        this.added = 0;
+    }
+
+    /**
+     * Gets the folder being scanned
+     * @return the root folder of the scan
+     */
+    Path getRoot() {
+        return this.root;
+    }
+
+    /**
+     * Walks the folder tree and probes the media found, ran on a background thread
+     * @return the number of new media files found
+     * @throws Exception if the scan was interrupted
+     */
+    @Override
+    protected Integer doInBackground() throws Exception {
+        //Probes are handed back in the order they finish so results can be added while the walk continues
+        CompletionService<MediaItem> probes = new ExecutorCompletionService<>(this.fileMan.getProbePool());
+        List<Future<MediaItem>> pending = new ArrayList<>(); //Every probe submitted, so they can be cancelled
+        ForkJoinPool walkers = new ForkJoinPool();
+        try {
+            ForkJoinTask<Void> walk = walkers.submit(new FolderTask(this.root, probes, pending));
+
+            int taken = 0;
+            List<MediaItem> batch = new ArrayList<>();
+            long batchStart = System.currentTimeMillis();
+            //Keep going until the walk has finished and every probe it started has been collected
+            while (!this.isCancelled() && (!walk.isDone() || taken < this.found.get())) {
+                Future<MediaItem> probe = probes.poll(BATCH_DELAY, TimeUnit.MILLISECONDS);
+                if (probe != null) {
+                    taken++;
+                    batch.add(probe.get());
+                }
+
+                //Send the batch once it is full or has waited long enough, so progress keeps showing on big scans
+                long now = System.currentTimeMillis();
+                if (batch.size() >= BATCH_SIZE || (!batch.isEmpty() && now - batchStart >= BATCH_DELAY)) {
+                    this.publish(batch);
+                    batch = new ArrayList<>();
+                    batchStart = now;
+                }
+            }
+            if (!batch.isEmpty()) this.publish(batch);
+            //Rethrows anything that went wrong walking the folders
+            if (!this.isCancelled()) walk.get();
+            return this.found.get();
+        } finally {
+            //Stop any walking or probing still going on if the scan was cancelled or failed
+            walkers.shutdownNow();
+            synchronized (pending) {
+                for (Future<MediaItem> probe : pending) probe.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Task that lists a single folder, starting a probe for each media file and a new task for each sub folder
+     */
+    private class FolderTask extends RecursiveAction {
+        private final Path dir; //The folder this task lists
+        private final CompletionService<MediaItem> probes; //Where probes for the media files are started
+        private final List<Future<MediaItem>> pending; //Every probe started by the scan
+
+        private FolderTask(Path dir, CompletionService<MediaItem> probes, List<Future<MediaItem>> pending) {
+            this.dir = dir;
+            this.probes = probes;
+            this.pending = pending;
+        }
+
+        /**
+         * Starts probing the media files in the folder and walks its sub folders in parallel
+         */
+        @Override
+        protected void compute() {
+            //The scanner is cancelled, not this task, so stop walking at the next folder
+            if (FolderScanner.this.isCancelled()) return;
+
+            List<FolderTask> subFolders = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(this.dir)) {
+                for (Path entry : entries) {
+                    //Links to folders aren't followed, so a link back up the tree can't make the scan loop forever
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        subFolders.add(new FolderTask(entry, this.probes, this.pending));
+                        continue;
+                    }
+
+                    String path = entry.toAbsolutePath().toString();
+                    if (fileMan.nonValidFile(path)) {
+                        skipped.incrementAndGet();
+                        continue;
+                    }
+                    //Files already in the library don't need probing, checking the path index is constant time
+                    if (fileMan.isManaged(path)) {
+                        duplicates.incrementAndGet();
+                        continue;
+                    }
+                    //Count before submitting so the collecting loop never thinks it has everything too early
+                    found.incrementAndGet();
+                    synchronized (this.pending) {
+                        this.pending.add(this.probes.submit(() -> fileMan.probe(path)));
+                    }
+                }
+            } catch (IOException e) {
+                //Folders that can't be read, for example because of permissions, are skipped
+            }
+            invokeAll(subFolders);
+        }
+    }
+
+    /**
+     * Adds probed media to the FileManager, ran on the event thread
+     * @param batches the batches of media sent from the background thread
+     */
+    @Override
+    protected void process(List<List<MediaItem>> batches) {
+        //Once the scan has finished or a different library has been opened nothing else should be added
+        if (!this.fileMan.isCurrentScan(this)) return;
+        for (List<MediaItem> batch : batches) {
+            //Anything added since the walk checked it is rejected by the FileManager and counted as a duplicate
+            int batchAdded = this.fileMan.addMedia(batch);
+            this.added += batchAdded;
+            this.duplicates.addAndGet(batch.size() - batchAdded);
+        }
+        this.listener.progress(this.found.get(), this.added);
+    }
+
+    /**
+     * Tells the FileManager and listener that the scan has finished, ran on the event thread
+     */
+    @Override
+    protected void done() {
+        this.fileMan.finishScan(this);
+        this.listener.finished(this.added, this.duplicates.get(), this.skipped.get(), this.isCancelled());
+    }
+}
@@ -0,0 +1,216 @@
+package util;
+
+import javax.swing.*;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches folders and all of their sub folders for media files being created, deleted or modified, and
+ * applies the changes to a FileManager. Events are collected until the folders have been quiet for a moment,
+ * so copying thousands of files results in a few batched updates rather than thousands of small ones.
+ */
+public class FolderWatcher implements Runnable {
+    private static final long QUIET_MILLIS = 500; //How long no events must arrive before changes are applied
+    private static final long MAX_DELAY_MILLIS = 5000; //Longest changes are held back during a constant burst
+    private static final long IDLE_MILLIS = 1000; //How often the thread wakes up to check for new roots
+
+    private final FileManager fileMan; //The FileManager the changes are applied to
+    private final WatchService service; //Service telling the watcher about changes in registered folders
+    private final Map<WatchKey, Path> keys; //The folder each registration is for
+    private final Queue<Path> newRoots; //Roots waiting to be registered by the watcher thread
+    private final Set<Path> pending; //Paths that have changed since the last batch was applied
+    private volatile boolean closed; //Set once the watcher has been stopped
+
+    /**
+     * Creates a watcher and starts its background thread
+     * @param fileMan the FileManager to apply changes to
+     * @throws IOException if the platform doesn't support watching folders
+     */
+    public FolderWatcher(FileManager fileMan) throws IOException {
+        this.fileMan = fileMan;
+        this.service = FileSystems.getDefault().newWatchService();
+        this.keys = new HashMap<>();
+        this.newRoots = new ConcurrentLinkedQueue<>();
+        this.pending = new LinkedHashSet<>();
+        this.closed = false;
+
+        //Daemon so it never stops the application closing
+        Thread thread = new Thread(this, "folder-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Starts watching a folder and all of its sub folders, registering happens on the watcher thread
+     * @param root the folder to watch
+     */
+    public void watch(Path root) {
+        //The watcher thread picks the root up the next time it wakes, at most IDLE_MILLIS later
+        this.newRoots.add(root);
+    }
+
+    /**
+     * Stops watching every folder and ends the background thread
+     */
+    public void close() {
+        this.closed = true;
+        try {
+            this.service.close();
+        } catch (IOException e) {
+            //Nothing else can be done, the thread still stops since closed is set
+        }
+    }
+
+    /**
+     * Waits for changes and applies them in batches, ran on the watcher thread
+     */
+    @Override
+    public void run() {
+        long firstEvent = 0; //When the oldest pending change arrived
+        long lastEvent = 0; //When the newest pending change arrived
+        try {
+            while (!this.closed) {
+                //Register any folders that have been added since the last loop
+                Path root;
+                while ((root = this.newRoots.poll()) != null) this.registerTree(root, false);
+
+                //Wait for the next event, or until the pending changes are due to be applied
+                long wait = IDLE_MILLIS;
+                if (!this.pending.isEmpty()) {
+                    long due = Math.min(lastEvent + QUIET_MILLIS, firstEvent + MAX_DELAY_MILLIS);
+                    wait = Math.max(0, due - System.currentTimeMillis());
+                }
+                WatchKey key = this.service.poll(wait, TimeUnit.MILLISECONDS);
+
+                if (key != null) {
+                    if (this.pending.isEmpty()) firstEvent = System.currentTimeMillis();
+                    lastEvent = System.currentTimeMillis();
+                    this.collect(key);
+                }
+
+                long now = System.currentTimeMillis();
+                if (!this.pending.isEmpty()
+                        && (now - lastEvent >= QUIET_MILLIS || now - firstEvent >= MAX_DELAY_MILLIS)) {
+                    this.flush();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            //The watcher has been closed so just let the thread end
+        }
+    }
+
+    /**
+     * Records the paths changed by the events of a registration
+     * @param key the registration that has events
+     */
+    private void collect(WatchKey key) {
+        Path dir = this.keys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            //Too many events were missed, so check everything in the folder instead
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                if (dir != null) this.registerTree(dir, true);
+                continue;
+            }
+            if (dir == null) continue;
+
+            Path child = dir.resolve((Path) event.context());
+            //New folders need watching too, and anything already copied into them counts as created
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                    && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                this.registerTree(child, true);
+            }
+            this.pending.add(child);
+        }
+
+        //A key that can't be reset belongs to a folder that no longer exists
+        if (!key.reset()) this.keys.remove(key);
+    }
+
+    /**
+     * Registers a folder and all its sub folders with the watch service
+     * @param root the folder to register
+     * @param addFiles true to also mark every file inside as changed, for folders that appeared after watching started
+     */
+    private void registerTree(Path root, boolean addFiles) {
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                /**
+                 * Watches each folder before its contents are walked
+                 * @param dir the folder
+                 * @param attrs the attributes of the folder
+                 * @return carries on into the folder
+                 * @throws IOException if the folder couldn't be registered
+                 */
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    WatchKey key = dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                    keys.put(key, dir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                /**
+                 * Marks a file as changed if the folder appeared after watching started
+                 * @param file the file
+                 * @param attrs the attributes of the file
+                 * @return carries on walking
+                 */
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (addFiles) pending.add(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                /**
+                 * @param file the file or folder that couldn't be read
+                 * @param e the reason it couldn't be read
+                 * @return carries on walking the other folders
+                 */
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    //Folders that can't be read are skipped rather than stopping the whole walk
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            //The folder disappeared or can't be read, it will be treated as deleted when its events arrive
+        }
+    }
+
+    /**
+     * Works out what each pending path means for the library and applies it on the event thread.
+     * The current state on disk is checked rather than replaying events, so a file created then deleted
+     * within one batch causes no change at all.
+     */
+    private void flush() {
+        List<MediaItem> added = new ArrayList<>();
+        List<MediaItem> modified = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+
+        for (Path path : this.pending) {
+            String dir = path.toString();
+            if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+                //Could be a media file or a whole folder that was deleted, the FileManager handles both
+                removed.add(dir);
+            } else if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS) || this.fileMan.nonValidFile(dir)) {
+                continue;
+            } else if (this.fileMan.isManaged(dir)) {
+                //Probing goes through the cache, so a file that hasn't really changed isn't read again
+                modified.add(this.fileMan.probe(dir));
+            } else {
+                added.add(this.fileMan.probe(dir));
+            }
+        }
+        this.pending.clear();
+
+        if (added.isEmpty() && modified.isEmpty() && removed.isEmpty()) return;
+        SwingUtilities.invokeLater(() -> {
+            //The watcher may have been replaced by opening another library while this was waiting
+            if (!this.closed) this.fileMan.applyFolderChanges(added, modified, removed);
+        });
+    }
+}
@@ -0,0 +1,63 @@
+package util;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Reads the resolution of images, any format ImageIO has a reader for could be added here
+ */
+class ImageProbe implements MediaProbe {
+    /**
+     * @return Image, the type shown in the table for images
+     */
+    @Override
+    public String getType() {
+        return "Image";
+    }
+
+    /**
+     * @return the extensions of PNG and JPEG images
+     */
+    @Override
+    public String[] getExtensions() {
+        return new String[] { "png", "jpg", "jpeg" };
+    }
+
+    /**
+     * Reads the width and height of an image from its header without decoding the pixels.
+     * Only if no reader can parse the header is the whole image decoded.
+     * @param file the image file to get the resolution of
+     * @return the resolution as widthxheight, or "Unknown" if the image can't be read
+     * @throws IOException if the file could not be read
+     */
+    @Override
+    public Metadata probe(File file) throws IOException {
+        try (ImageInputStream stream = ImageIO.createImageInputStream(file)) {
+            //Find a reader that recognises the files header, this picks based on content not the file name
+            Iterator<ImageReader> readers = stream == null ? null : ImageIO.getImageReaders(stream);
+            if (readers != null && readers.hasNext()) {
+                ImageReader reader = readers.next();
+                try {
+                    //Seek forward only and ignore metadata, getWidth/getHeight then only read as far as the
+                    //PNG IHDR chunk or JPEG SOF marker
+                    reader.setInput(stream, true, true);
+                    return new Metadata(reader.getWidth(0) + "x" + reader.getHeight(0), 0);
+                } catch (IOException e) {
+                    //Header couldn't be parsed so fall through to decoding the full image below
+                } finally {
+                    reader.dispose();
+                }
+            }
+        }
+
+        //Fall back to decoding the whole image, ImageIO.read returns null if no reader supports the file
+        BufferedImage img = ImageIO.read(file);
+        if (img == null) return this.unreadable();
+        return new Metadata(img.getWidth() + "x" + img.getHeight(), 0);
+    }
+}
@@ -0,0 +1,351 @@
+package util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Append only log of the changes made to a library since its file was last written, stored next to the library.
+ * Saving only has to add a commit record to the end of the journal rather than rewriting the whole library,
+ * and changes that hadn't been saved when the application stopped are still in the journal to be recovered.
+ * <p>
+ * The journal starts with the size and modified time of the library file it was started for, so a journal
+ * left over from before the library was rewritten is ignored. Every write happens on the writer executor
+ * given to it, so writes are done in the order they were made without holding up the event thread.
+ */
+class Journal {
+    static final byte ADD = 1; //Media file added, stored as its path
+    static final byte DELETE = 2; //Media item removed, stored as its path and index in the media list
+    static final byte PLAYLIST = 3; //Playlist created or replaced, stored as its name then the paths in it
+    static final byte REMOVE_PLAYLIST = 4; //Playlist removed, stored as its name
+    static final byte COMMIT = 5; //Every change before this has been saved
+
+    private static final byte[] MAGIC = { 'M', 'L', 'J', '1' }; //First bytes of every journal
+    private static final int HEADER_BYTES = MAGIC.length + 16; //Magic followed by the library size and modified time
+    private static final long MIN_COMPACT_BYTES = 1 << 16; //Journals smaller than this are never worth compacting
+
+    private final File library; //The library file the journal belongs to
+    private final File file; //The journal file
+    private final ExecutorService writer; //Single thread that every write to the journal is done on
+    private FileChannel channel; //Open journal file, only used on the writer thread
+    private long committed; //Length of the journal up to the last commit, only used on the writer thread
+    private volatile long length; //Current length of the journal
+    private volatile boolean failed; //If a write failed, so the journal no longer matches the library
+
+    /**
+     * Writes a copy of the library to its file when the journal is compacted
+     */
+    interface Snapshot {
+        /**
+         * @throws IOException if the library file couldn't be written
+         */
+        void write() throws IOException;
+    }
+
+    /**
+     * A single change stored in the journal
+     */
+    static class Record {
+        final byte type; //What kind of change this is
+        final String[] values; //The paths and names the change is about
+
+        Record(byte type, String... values) {
+            this.type = type;
+            this.values = values;
+        }
+    }
+
+    /**
+     * Everything read from a journal when its library is opened
+     */
+    static class Contents {
+        final List<Record> records; //Every complete record in the order they were written, including commits
+        final long length; //Length of the journal up to the end of the last complete record, 0 if it is unusable
+        final long committed; //Length of the journal up to the end of the last commit
+
+        private Contents(List<Record> records, long length, long committed) {
+            this.records = records;
+            this.length = length;
+            this.committed = committed;
+        }
+
+        /**
+         * @return the number of records after the last commit, which are changes that were never saved
+         */
+        int uncommitted() {
+            int count = 0;
+            for (int i = this.records.size() - 1; i >= 0 && this.records.get(i).type != COMMIT; i--) count++;
+            return count;
+        }
+    }
+
+    /**
+     * Gets the journal file used for a library file
+     * @param library the media library file
+     * @return the journal file stored next to the library
+     */
+    static File journalFileFor(File library) {
+        return new File(library.getPath() + ".journal");
+    }
+
+    /**
+     * Reads the journal of a library, should be ran on the writer executor so it can't overlap a write.
+     * A journal that is missing, damaged or was started for a different version of the library gives no records,
+     * and a record cut off by the application stopping part way through writing it is ignored.
+     * @param library the media library file
+     * @return the records in the journal
+     */
+    static Contents read(File library) {
+        List<Record> records = new ArrayList<>();
+        File file = journalFileFor(library);
+        if (!file.exists()) return new Contents(records, 0, 0);
+
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            return new Contents(records, 0, 0);
+        }
+
+        long length = 0;
+        long committed = 0;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            byte[] magic = in.readNBytes(MAGIC.length);
+            if (!Arrays.equals(magic, MAGIC)) return new Contents(records, 0, 0);
+            //Started for a different version of the library, which already has these changes or never will
+            if (in.readLong() != library.length() || in.readLong() != library.lastModified()) {
+                return new Contents(records, 0, 0);
+            }
+            length = HEADER_BYTES;
+            committed = HEADER_BYTES;
+
+            while (in.available() > 0) {
+                byte type = in.readByte();
+                String[] values = new String[in.readInt()];
+                for (int i = 0; i < values.length; i++) values[i] = in.readUTF();
+                records.add(new Record(type, values));
+                //Only move the end forward once the whole record has been read
+                length = bytes.length - in.available();
+                if (type == COMMIT) committed = length;
+            }
+        } catch (IOException e) {
+            //The last record was only partly written, everything before it is still good
+        }
+        return new Contents(records, length, committed);
+    }
+
+    /**
+     * Reads the journal of a library on the writer executor, after any writes still waiting to be done
+     * @param library the media library file
+     * @param writer single thread executor that every journal write is done on
+     * @return the records in the journal, none if it couldn't be read
+     */
+    static Contents read(File library, ExecutorService writer) {
+        try {
+            return writer.submit(() -> read(library)).get();
+        } catch (Exception e) {
+            return new Contents(new ArrayList<>(), 0, 0);
+        }
+    }
+
+    /**
+     * Creates a journal for a library, the journal file isn't touched until open is called
+     * @param library the media library file
+     * @param writer single thread executor that every write is done on
+     */
+    Journal(File library, ExecutorService writer) {
+        this.library = library;
+        this.file = journalFileFor(library);
+        this.writer = writer;
+    }
+
+    /**
+     * Opens the journal to add to the end of it, starting a new journal if the one read can't be used
+     * @param contents the contents read from the journal when the library was opened
+     */
+    void open(Contents contents) {
+        this.writer.submit(() -> {
+            try {
+                if (contents.length == 0) {
+                    this.restartFile();
+                    return;
+                }
+                this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.WRITE);
+                //Cut off any record that was only partly written so new records follow on from the last good one
+                this.channel.truncate(contents.length);
+                this.channel.position(contents.length);
+                this.committed = contents.committed;
+                this.length = contents.length;
+            } catch (IOException e) {
+                this.failed = true;
+            }
+        });
+    }
+
+    /**
+     * Adds records to the end of the journal, they are written straight away but not forced to the disk
+     * @param records the records to add
+     */
+    void append(Record... records) {
+        //Encode on the calling thread so the records can't be changed before they are written
+        byte[] bytes;
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(buffer);
+            for (Record record : records) {
+                out.writeByte(record.type);
+                out.writeInt(record.values.length);
+                for (String value : record.values) out.writeUTF(value);
+            }
+            bytes = buffer.toByteArray();
+        } catch (IOException e) {
+            this.failed = true;
+            return;
+        }
+
+        this.writer.submit(() -> {
+            if (this.failed) return;
+            try {
+                this.write(bytes);
+            } catch (IOException e) {
+                this.failed = true;
+            }
+        });
+    }
+
+    /**
+     * Adds a commit record and forces the journal to the disk in the background, marking every change so far as saved
+     * @return gives true once every change made is in the journal on disk, false if the journal can't be used
+     */
+    Future<Boolean> commit() {
+        return this.writer.submit(() -> {
+            if (this.failed) return false;
+            try {
+                this.write(new byte[] { COMMIT, 0, 0, 0, 0 });
+                this.channel.force(false);
+                this.committed = this.length;
+                return true;
+            } catch (IOException e) {
+                this.failed = true;
+                return false;
+            }
+        });
+    }
+
+    /**
+     * @return true if a write to the journal failed, so changes have to be saved by rewriting the library file
+     */
+    boolean hasFailed() {
+        return this.failed;
+    }
+
+    /**
+     * Removes every record after the last commit, for when the user chooses not to save their changes
+     */
+    void discard() {
+        Future<?> result = this.writer.submit(() -> {
+            if (this.failed || this.channel == null) return;
+            try {
+                this.channel.truncate(this.committed);
+                this.channel.position(this.committed);
+                this.channel.force(false);
+                this.length = this.committed;
+            } catch (IOException e) {
+                this.failed = true;
+            }
+        });
+        try {
+            //Wait so the changes are gone before the application closes or the library is opened again
+            result.get();
+        } catch (Exception e) {
+            //Nothing more can be done, the changes will be recovered next time the library is opened
+        }
+    }
+
+    /**
+     * Checks if the journal has grown big enough that rewriting the library file would be worth it
+     * @return true if the journal is bigger than the library file
+     */
+    boolean needsCompaction() {
+        long records = this.length - HEADER_BYTES;
+        return records > MIN_COMPACT_BYTES && records > this.library.length();
+    }
+
+    /**
+     * Rewrites the library file in the background then starts an empty journal for it. Changes appended after
+     * this is called go into the new journal, so the library contents given must include every change before it.
+     * @param base writes the library file
+     * @return gives true once the library file has been written, false if it couldn't be
+     */
+    Future<Boolean> compact(Snapshot base) {
+        return this.writer.submit(() -> {
+            try {
+                base.write();
+            } catch (IOException e) {
+                //The library file write is atomic, so if it failed the journal still holds every change
+                return false;
+            }
+            try {
+                this.restartFile();
+            } catch (IOException e) {
+                //The library file has every change, but changes made after this can only be saved by rewriting it
+                this.failed = true;
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Stops using the journal file, anything already appended is still written
+     */
+    void close() {
+        this.writer.submit(() -> {
+            try {
+                if (this.channel != null) this.channel.close();
+            } catch (IOException e) {
+                //The file is finished with so there is nothing to do
+            }
+            this.channel = null;
+        });
+    }
+
+    /**
+     * Replaces the journal file with an empty one for the current library file, ran on the writer thread
+     * @throws IOException if the journal couldn't be written
+     */
+    private void restartFile() throws IOException {
+        if (this.channel != null) this.channel.close();
+        long bytes = this.library.length();
+        long modified = this.library.lastModified();
+        AtomicFile.write(this.file, out -> {
+            DataOutputStream header = new DataOutputStream(out);
+            header.write(MAGIC);
+            header.writeLong(bytes);
+            header.writeLong(modified);
+            header.flush();
+        });
+        this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.WRITE);
+        this.channel.position(HEADER_BYTES);
+        this.committed = HEADER_BYTES;
+        this.length = HEADER_BYTES;
+        this.failed = false;
+    }
+
+    /**
+     * Writes bytes to the end of the journal, ran on the writer thread
+     * @param bytes the encoded records
+     * @throws IOException if the journal couldn't be written
+     */
+    private void write(byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) this.channel.write(buffer);
+        this.length += bytes.length;
+    }
+}
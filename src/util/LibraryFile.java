@@ -0,0 +1,237 @@
+package util;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Reads and writes media library files, which can be stored in either of two formats.
+ * <p>
+ * The CSV format starts with the heading [MediaLibraryOrganiserFile] followed by a line per media item
+ * stored as fileDir, playlist1, playlist2...
+ * <p>
+ * The binary format starts with the bytes MLOB and a version number. The body holds a table of the folders
+ * the media is in, a table of playlist names, then each item as an index into the folder table, its file name,
+ * the indexes of its playlists and its cached metadata. The file ends with a CRC32 of the body, so a damaged
+ * file is rejected rather than partly loaded.
+ */
+public class LibraryFile {
+    public static final String CSV_HEADING = "[MediaLibraryOrganiserFile]"; //First line of every CSV library
+    public static final String BINARY_EXTENSION = "mlib"; //File extension used for binary libraries
+    private static final byte[] MAGIC = { 'M', 'L', 'O', 'B' }; //First bytes of every binary library
+    private static final int VERSION = 1; //Bumped whenever the binary layout changes
+    private static final int HEADER_BYTES = MAGIC.length + 4; //Magic followed by the version int
+    private static final int BUFFER_BYTES = 1 << 16; //Buffer size used when streaming library files
+
+    /**
+     * Receives each entry read from a library file
+     */
+    interface EntryReader {
+        /**
+         * @param entry the entry stored as fileDir, playlist1, playlist2...
+         * @param cached media item made from metadata stored in the library, null if there wasn't any
+         * @return true to keep reading, false to stop
+         */
+        boolean accept(String[] entry, MediaItem cached) throws Exception;
+    }
+
+    /**
+     * Checks if a file is stored in the binary format
+     * @param file the library file to check
+     * @return true if the file starts with the binary magic bytes, false otherwise
+     * @throws IOException if the file couldn't be read
+     */
+    public static boolean isBinary(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] magic = in.readNBytes(MAGIC.length);
+            return Arrays.equals(magic, MAGIC);
+        }
+    }
+
+    /**
+     * Reads every entry from a library file in either format
+     * @param file the library file to read
+     * @param cache cache that metadata stored in a binary library is added to
+     * @param reader receives each entry in the order it is stored
+     * @return true if the file was read, false if it isn't a media library file
+     * @throws Exception if the file couldn't be read or the reader failed
+     */
+    static boolean read(File file, MetadataCache cache, EntryReader reader) throws Exception {
+        if (isBinary(file)) return readBinary(file, cache, reader);
+
+        try (Scanner scanner = new Scanner(file)) {
+            //If this heading isn't in the file then it's not a valid media library file
+            if (!scanner.hasNextLine() || !scanner.nextLine().equals(CSV_HEADING)) return false;
+            while (scanner.hasNextLine()) {
+                if (!reader.accept(scanner.nextLine().split(","), null)) break;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Reads every entry from a binary library file, after checking its checksum
+     * @param file the library file to read
+     * @param cache cache the stored metadata is added to
+     * @param reader receives each entry in the order it is stored
+     * @return true if the file was read, false if it has an unsupported version or a bad checksum
+     * @throws Exception if the file couldn't be read or the reader failed
+     */
+    private static boolean readBinary(File file, MetadataCache cache, EntryReader reader) throws Exception {
+        //Check the whole body before anything is handed to the reader, so a damaged file never half loads
+        long bodyBytes = file.length() - HEADER_BYTES - 8;
+        if (bodyBytes < 0) return false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_BYTES))) {
+            in.skipNBytes(HEADER_BYTES);
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[BUFFER_BYTES];
+            long remaining = bodyBytes;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read == -1) return false;
+                crc.update(buffer, 0, read);
+                remaining -= read;
+            }
+            if (in.readLong() != crc.getValue()) return false;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_BYTES))) {
+            in.skipNBytes(MAGIC.length);
+            if (in.readInt() != VERSION) return false;
+
+            String[] folders = readStrings(in);
+            String[] playlists = readStrings(in);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                //Rebuild the path from the folder table and the file name
+                String path = folders[in.readInt()] + in.readUTF();
+                String[] entry = new String[in.readInt() + 1];
+                entry[0] = path;
+                for (int j = 1; j < entry.length; j++) entry[j] = playlists[in.readInt()];
+                MediaItem cached = cache.readEntry(path, in);
+                if (!reader.accept(entry, cached)) break;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Writes a library file, replacing it only once the whole library has been written
+     * @param file the library file to write
+     * @param binary true to write the binary format, false for CSV
+     * @param media every media item in the library, in order
+     * @param playlists the names of the playlists each media item is in
+     * @param cache cached metadata that is stored with each item in the binary format
+     * @throws IOException if the file couldn't be written
+     */
+    static void write(File file, boolean binary, List<MediaItem> media, Map<MediaItem, Set<String>> playlists,
+                      MetadataCache cache) throws IOException {
+        if (binary) {
+            AtomicFile.write(file, out -> writeBinary(out, media, playlists, cache));
+            return;
+        }
+
+        AtomicFile.write(file, out -> {
+            //Default charset to match the Scanner that reads the file back in
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, Charset.defaultCharset()));
+            writer.write(CSV_HEADING + "\n");
+            for (MediaItem item : media) {
+                //Write the items path followed by all the playlists it is in
+                writer.write(item.getPath());
+                Set<String> names = playlists.get(item);
+                if (names != null) {
+                    for (String playlist : names) {
+                        writer.write(",");
+                        writer.write(playlist);
+                    }
+                }
+                writer.write("\n"); //End line with \n so the next items entry will be on a new line
+            }
+            writer.flush();
+        });
+    }
+
+    /**
+     * Creates a library file with no media in it
+     * @param file the file to create
+     * @param binary true to use the binary format, false for CSV
+     * @throws IOException if the file couldn't be written
+     */
+    public static void createEmpty(File file, boolean binary) throws IOException {
+        write(file, binary, new ArrayList<>(), new HashMap<>(), new MetadataCache());
+    }
+
+    /**
+     * Writes the binary format to a stream
+     * @param stream the stream to write to
+     * @param media every media item in the library, in order
+     * @param playlists the names of the playlists each media item is in
+     * @param cache cached metadata stored with each item
+     * @throws IOException if the stream couldn't be written to
+     */
+    private static void writeBinary(OutputStream stream, List<MediaItem> media, Map<MediaItem, Set<String>> playlists,
+                                    MetadataCache cache) throws IOException {
+        //Build the string tables first, each folder and playlist name is then stored once as an index.
+        //Folders come from the PathTrie node each item already holds, so the table splits paths the same way
+        Map<PathTrie.Node, Integer> folders = new LinkedHashMap<>();
+        List<String> folderPaths = new ArrayList<>();
+        Map<String, Integer> names = new LinkedHashMap<>();
+        for (MediaItem item : media) {
+            if (folders.putIfAbsent(item.getFolder(), folders.size()) == null) folderPaths.add(item.getFolder().getPath());
+            for (String name : playlists.getOrDefault(item, Collections.emptySet())) {
+                names.putIfAbsent(name, names.size());
+            }
+        }
+
+        DataOutputStream header = new DataOutputStream(stream);
+        header.write(MAGIC);
+        header.writeInt(VERSION);
+        header.flush();
+
+        //Everything after the header goes through the checksum
+        CheckedOutputStream checked = new CheckedOutputStream(stream, new CRC32());
+        DataOutputStream out = new DataOutputStream(checked);
+        writeStrings(out, folderPaths);
+        writeStrings(out, names.keySet());
+        out.writeInt(media.size());
+        for (MediaItem item : media) {
+            out.writeInt(folders.get(item.getFolder()));
+            out.writeUTF(item.getName());
+            Set<String> itemPlaylists = playlists.getOrDefault(item, Collections.emptySet());
+            out.writeInt(itemPlaylists.size());
+            for (String name : itemPlaylists) out.writeInt(names.get(name));
+            cache.writeEntry(item.getPath(), out);
+        }
+        out.flush();
+
+        //Checksum goes at the end since the body is streamed rather than held in memory
+        header.writeLong(checked.getChecksum().getValue());
+        header.flush();
+    }
+
+    /**
+     * Writes a table of strings
+     * @param out the stream to write to
+     * @param strings the strings in index order
+     * @throws IOException if the stream couldn't be written to
+     */
+    private static void writeStrings(DataOutputStream out, Collection<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) out.writeUTF(string);
+    }
+
+    /**
+     * Reads a table of strings written by writeStrings
+     * @param in the stream to read from
+     * @return the strings in index order
+     * @throws IOException if the stream couldn't be read
+     */
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; i++) strings[i] = in.readUTF();
+        return strings;
+    }
+}
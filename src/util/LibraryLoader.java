@@ -0,0 +1,199 @@
+package util;
+
+import javax.swing.*;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Reads a media library file in the background so the library can be used while it loads.
+ * Rows are added to the FileManager in batches as soon as they are read, then each rows metadata
+ * is filled in once the probe pool has read it. The FileManager tells its MediaListeners about both.
+ */
+public class LibraryLoader extends SwingWorker<Boolean, LibraryLoader.Chunk> {
+    private static final int BATCH_SIZE = 500; //Number of rows sent to the event thread at a time
+
+    private final FileManager fileMan; //The FileManager the rows are being loaded into
+    private final File file; //The media library file being read
+    private final Listener listener; //Gets told about the progress of the load
+    private int rowsRead; //Number of rows that have been added to the FileManager so far
+    private int rowsProbed; //Number of rows that have had their metadata filled in so far
+    private Journal.Contents journal; //Changes made since the file was written, read once the rows are done
+    private final Map<String, MediaItem> journalProbed; //Media items for the files added in the journal
+
+    /**
+     * Gets told about the progress of a load, every function is called on the Swing event thread
+     */
+    public interface Listener {
+        /**
+         * Progress of the load has changed
+         * @param probed number of rows with their metadata filled in
+         * @param read number of rows read from the file so far
+         */
+        void progress(int probed, int read);
+
+        /**
+         * The load has finished, not called if the load was cancelled
+         * @param success true if the file was read successfully, false otherwise
+         */
+        void finished(boolean success);
+    }
+
+    /**
+     * A batch of rows sent from the background thread to the event thread
+     */
+    static class Chunk {
+        private final int first; //Index of the first row in the batch
+        private final List<MediaItem> rows; //The media items the batch is about
+        private final List<String[]> entries; //Entries read for new rows, null if the batch is probed metadata
+        private final List<MediaItem> probed; //Probed metadata for the rows, null if the batch is new rows
+
+        private Chunk(int first, List<MediaItem> rows, List<String[]> entries, List<MediaItem> probed) {
+            this.first = first;
+            this.rows = rows;
+            this.entries = entries;
+            this.probed = probed;
+        }
+    }
+
+    /**
+     * Creates a loader for a library file, started by FileManager.load
+     * @param fileMan the FileManager to load the rows into
+     * @param file the media library file to read
+     * @param listener gets told about the progress of the load
+     */
+    LibraryLoader(FileManager fileMan, File file, Listener listener) {
+        this.fileMan = fileMan;
+        this.file = file;
+        this.listener = listener;
+        this.rowsRead = 0;
+        this.rowsProbed = 0;
+        this.journalProbed = new HashMap<>();
+    }
+
+    /**
+     * Reads the rows of the file and probes their metadata, ran on a background thread
+     * @return true if the file was read successfully, false if it isn't a media library file
+     * @throws Exception if the file couldn't be read or a probe failed
+     */
+    @Override
+    protected Boolean doInBackground() throws Exception {
+        //Load the metadata saved from the last time this library was open so unchanged files aren't probed
+        MetadataCache cache = this.fileMan.getCache();
+        cache.load(this.file);
+
+        List<MediaItem> items = new ArrayList<>(); //Every row read, in the order of the file
+        List<Future<MediaItem>> probes = new ArrayList<>(); //Probe for each row, in the same order
+        try {
+            List<MediaItem> rows = new ArrayList<>();
+            List<String[]> entries = new ArrayList<>();
+            boolean library = LibraryFile.read(this.file, cache, (mediaInfo, cached) -> {
+                if (this.isCancelled()) return false;
+                if (this.fileMan.nonValidFile(mediaInfo[0])) return true;
+
+                //Create the row straight away, using the metadata stored in a binary library if there is any,
+                //and start probing the file on the pool to check it hasn't changed
+                MediaItem item = cached != null ? cached : new MediaItem(mediaInfo[0]);
+                items.add(item);
+                rows.add(item);
+                entries.add(mediaInfo);
+                probes.add(this.fileMan.getProbePool().submit(() -> this.fileMan.probe(mediaInfo[0])));
+
+                //Send full batches to the event thread so the table fills up while the rest is read
+                if (rows.size() == BATCH_SIZE) {
+                    this.publish(new Chunk(items.size() - rows.size(), new ArrayList<>(rows), new ArrayList<>(entries), null));
+                    rows.clear();
+                    entries.clear();
+                }
+                return true;
+            });
+            if (!library) return false;
+            if (!rows.isEmpty()) this.publish(new Chunk(items.size() - rows.size(), rows, entries, null));
+
+            //Collect the probes in file order and send the metadata over in batches
+            int first = 0;
+            List<MediaItem> probed = new ArrayList<>();
+            for (int i = 0; i < probes.size() && !this.isCancelled(); i++) {
+                probed.add(probes.get(i).get());
+                if (probed.size() == BATCH_SIZE || i == probes.size() - 1) {
+                    this.publish(new Chunk(first, items.subList(first, i + 1), null, probed));
+                    first = i + 1;
+                    probed = new ArrayList<>();
+                }
+            }
+        } finally {
+            //If the load stopped early then don't leave probes running for a library that isn't open
+            for (Future<MediaItem> probe : probes) probe.cancel(true);
+        }
+
+        //Read the changes made since the file was written and probe any files they add here rather than on the
+        //event thread, the FileManager replays them once the load is finished
+        if (!this.isCancelled()) {
+            this.journal = Journal.read(this.file, this.fileMan.getJournalWriter());
+            Map<String, Future<MediaItem>> added = new HashMap<>();
+            for (Journal.Record record : this.journal.records) {
+                if (record.type != Journal.ADD) continue;
+                String dir = record.values[0];
+                added.computeIfAbsent(dir, key -> this.fileMan.getProbePool().submit(() -> this.fileMan.probe(dir)));
+            }
+            for (Map.Entry<String, Future<MediaItem>> entry : added.entrySet()) {
+                this.journalProbed.put(entry.getKey(), entry.getValue().get());
+            }
+        }
+
+        //If anything had to be probed then update the cache so it doesn't have to be done next time,
+        //a binary library holds its own metadata so that is written when the library is next saved
+        if (!this.isCancelled() && cache.hasChanges() && !LibraryFile.isBinary(this.file)) cache.save(this.file, items);
+        return true;
+    }
+
+    /**
+     * Adds new rows to the FileManager and fills in probed metadata, ran on the event thread
+     * @param chunks the batches sent from the background thread
+     */
+    @Override
+    protected void process(List<Chunk> chunks) {
+        //A newer load has replaced this one so its rows shouldn't be added
+        if (this.isCancelled()) return;
+
+        for (Chunk chunk : chunks) {
+            int last = chunk.first + chunk.rows.size() - 1;
+            if (chunk.entries != null) {
+                for (int i = 0; i < chunk.rows.size(); i++) {
+                    this.fileMan.addEntry(chunk.rows.get(i), chunk.entries.get(i));
+                }
+                this.rowsRead += chunk.rows.size();
+                this.fileMan.fireMediaInserted(chunk.first, last);
+            } else {
+                for (int i = 0; i < chunk.rows.size(); i++) {
+                    chunk.rows.get(i).update(chunk.probed.get(i));
+                }
+                this.rowsProbed += chunk.rows.size();
+                this.fileMan.fireMediaUpdated(chunk.first, last);
+            }
+        }
+        this.listener.progress(this.rowsProbed, this.rowsRead);
+    }
+
+    /**
+     * Tells the FileManager and listener that the load has finished, ran on the event thread
+     */
+    @Override
+    protected void done() {
+        //A cancelled load has been replaced by another one, so that one is in charge of the FileManager
+        if (this.isCancelled()) return;
+
+        boolean success;
+        try {
+            success = this.get();
+        } catch (Exception e) {
+            //Something went wrong reading the file or probing the media
+            success = false;
+        }
+        this.fileMan.finishLoad(this.file, success, this.journal, this.journalProbed);
+        this.listener.finished(success);
+    }
+}
@@ -1,90 +1,190 @@
 package util;
 
-import javax.imageio.ImageIO;
-import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * A media file being managed and the metadata read from it.
+ * <p>
+ * Libraries can hold millions of media items, so each one is kept as small as possible. The metadata is stored
+ * as plain numbers and only turned into text when a cell is drawn, the type is stored as a byte, and the path
+ * is split into its folder in the shared PathTrie and the bytes of the file name. The full path and the name
+ * are put back together whenever they are asked for.
+ */
 public class MediaItem {
-    private final String name; //Media files name
-    private final String fileDir; //Media files absolute path
-    private final String type; //Type of media: Image, Audio, Video
-    private final float size; //Size of the media file in MB
-    private final String resolution; //Resolution of the media if it is video/image, else empty string
-    private final double length; //Length of the recording if it is audio/video, else 0
+    private static final int UNKNOWN = -1; //Width and height of media whose resolution couldn't be read
+    //Every type of media seen so far, items store the index of their type in this list
+    private static final List<String> TYPES = new CopyOnWriteArrayList<>(new String[] { "Image", "Audio", "Video", "Unknown" });
+
+    private final PathTrie.Node folder; //Folder the media file is in
+    private final byte[] name; //Media files name as UTF-8, smaller than a String and only turned into one when needed
+    private final byte type; //Index in TYPES of the type of media: Image, Audio, Video
+    private long bytes; //Size of the media file in bytes
+    private int width; //Width of the media in pixels, 0 if it has no resolution or UNKNOWN if it couldn't be read
+    private int height; //Height of the media in pixels, 0 if it has no resolution or UNKNOWN if it couldn't be read
+    private float length; //Length of the recording in seconds if it is audio/video, else 0
+    private boolean loaded; //If the metadata has been read from the file yet
+    private int ordinal; //Number given to the media by the library it is in, -1 if it isn't in one
 
     /**
      * Sets all the properties of the media based on information from the file
      * @param entry String array with first element as file path and all other elements the name of playlists the medias in
      */
     public MediaItem(String[] entry) {
-        //Set the file directory as the first element in the entry array
-        this.fileDir = entry[0];
+        this(entry[0], ProbeRegistry.getDefault().typeOf(entry[0]));
 
         //Create a new file so information can be retrieved from it
-        File file = new File(this.fileDir);
-        this.name = file.getName();
-
-        //Set file type based on file ending, if it's not mp4/wav it must be an image.
-        String fileSuffix = name.substring(name.length()-3);
-        switch (fileSuffix) {
-            case "mp4" -> this.type = "Video";
-            case "wav" -> this.type = "Audio";
-            default -> this.type = "Image";
+        File file = new File(entry[0]);
+        this.bytes = file.length();
+
+        //The probe for the files type reads its resolution and length, giving Unknown or 0 if it can't
+        MediaProbe.Metadata metadata = ProbeRegistry.getDefault().probe(file);
+        this.setResolution(metadata.getResolution());
+        this.length = (float) metadata.getLength();
+        this.loaded = true;
+    }
+
+    /**
+     * Creates a media item without reading anything from the file, so it can be shown straight away.
+     * The metadata is filled in later with update.
+     * @param fileDir the media files absolute path
+     */
+    public MediaItem(String fileDir) {
+        this(fileDir, ProbeRegistry.getDefault().typeOf(fileDir));
+    }
+
+    /**
+     * Creates a media item from metadata that has already been read, so the file doesn't need probing again
+     * @param fileDir the media files absolute path
+     * @param type the type of media: Image, Audio, Video
+     * @param size the size of the media file in MB
+     * @param resolution the resolution of the media, N/A if it doesn't have one
+     * @param length the length of the recording in seconds, 0 if it isn't a recording
+     */
+    public MediaItem(String fileDir, String type, float size, String resolution, double length) {
+        this(fileDir, type, Math.round(size * 1000000d), resolution, length);
+    }
+
+    /**
+     * Creates a media item from metadata that has already been read, keeping the exact size of the file
+     * @param fileDir the media files absolute path
+     * @param type the type of media: Image, Audio, Video
+     * @param bytes the size of the media file in bytes
+     * @param resolution the resolution of the media, N/A if it doesn't have one
+     * @param length the length of the recording in seconds, 0 if it isn't a recording
+     */
+    public MediaItem(String fileDir, String type, long bytes, String resolution, double length) {
+        this(fileDir, type);
+        this.bytes = bytes;
+        this.setResolution(resolution);
+        this.length = (float) length;
+        this.loaded = true;
+    }
+
+    /**
+     * Splits the path of a media file into its shared folder and name, with no metadata loaded yet
+     * @param fileDir the media files absolute path
+     * @param type the type of media
+     */
+    private MediaItem(String fileDir, String type) {
+        //Split after the last separator so the folder and name join back into exactly the same path
+        this.folder = PathTrie.folderOf(fileDir);
+        this.name = fileDir.substring(PathTrie.nameStart(fileDir)).getBytes(StandardCharsets.UTF_8);
+        this.type = typeIndex(type);
+        this.loaded = false;
+        this.ordinal = -1;
+    }
+
+    /**
+     * Gets the index a type of media is stored as, adding it if it hasn't been seen before
+     * @param type the type of media
+     * @return the index of the type in TYPES
+     */
+    private static byte typeIndex(String type) {
+        int index = TYPES.indexOf(type);
+        if (index != -1) return (byte) index;
+        synchronized (TYPES) {
+            //Another thread could have added it while waiting
+            if (!TYPES.contains(type)) TYPES.add(type);
+            return (byte) TYPES.indexOf(type);
         }
+    }
 
-        //File.length() gives size in bytes, adjusting to store size in MB
-        float rawSize = file.length() / 1000000f;
-        //Rounding the value to get the size to 2 decimal places for readability
-        this.size = Math.round(rawSize * 100f) / 100f;
-
-        //If file is an image try to get resolution, if this fails then set resolution as "Unknown"
-        String res;
-        if (this.type.equals("Image")) {
-            try {
-                BufferedImage img = ImageIO.read(file);
-                res = img.getWidth() + "x" + img.getHeight();
-            } catch (IOException e) {
-                res = "Unknown";
-            }
-        } else res = "N/A"; //If it's not an image then unable to get resolution so N/A
-
-        this.resolution = res; //Set the resolution property to what was just calculated
-
-        double length;
-        if (this.type.equals("Audio")) {
-            try {
-                AudioInputStream stream = AudioSystem.getAudioInputStream(file); //Get the audio as a stream
-                AudioFormat format = stream.getFormat(); //Get the format of the audio file
-                long frames = stream.getFrameLength(); //Get the number of frames in the audio stream
-                length = (frames+0.0) / format.getFrameRate(); //Length is the number of frames / frame rate
-            } catch (Exception e) {
-                length = 0d; //Something went wrong so set length as 0
-            }
-        } else length = 0; //Not audio so 0 length
-        this.length = length; //Set the length property
-    }
-
-    /**
-     * Gets the media item in a form that can be inserted into a table
-     * @return Array of Strings to be added as a row into a table
-     */
-    public String[] getEntry() {
-        //If length is empty replace it with N/A
-        String length;
-        if (this.length == 0) length = "N/A";
-        else length = this.length + "s"; //Add s to the length to show its in seconds
-
-        //Returns the data of the item in an array for tables
-        return new String[]{
-                this.name,
-                String.valueOf(this.size),
-                this.type,
-                this.resolution,
-                length
+    /**
+     * Fills in the metadata of a media item that was created without reading the file
+     * @param probed a media item for the same file that has had its metadata read
+     */
+    public void update(MediaItem probed) {
+        this.bytes = probed.bytes;
+        this.width = probed.width;
+        this.height = probed.height;
+        this.length = probed.length;
+        this.loaded = true;
+    }
+
+    /**
+     * Sets the width and height from the text of a resolution
+     * @param resolution the resolution as widthxheight, N/A or Unknown
+     */
+    private void setResolution(String resolution) {
+        if (resolution.equals("N/A")) {
+            this.width = 0;
+            this.height = 0;
+            return;
+        }
+        int split = resolution.indexOf('x');
+        try {
+            this.width = Integer.parseInt(resolution.substring(0, split));
+            this.height = Integer.parseInt(resolution.substring(split + 1));
+        } catch (RuntimeException e) {
+            //Unknown, or anything else that isn't a resolution
+            this.width = UNKNOWN;
+            this.height = UNKNOWN;
+        }
+    }
+
+    /**
+     * Gets the number the library gave the media, used to store playlists as bit sets
+     * @return the ordinal, -1 if the media hasn't been added to a library
+     */
+    int getOrdinal() {
+        return this.ordinal;
+    }
+
+    /**
+     * Sets the number the library gave the media, it shouldn't change while the media is in the library
+     * @param ordinal the ordinal
+     */
+    void setOrdinal(int ordinal) {
+        this.ordinal = ordinal;
+    }
+
+    /**
+     * Checks if the metadata of the media item has been read from the file yet
+     * @return true if the metadata is available, false if it is still loading
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Gets a single cell of the media item for displaying in a table, only the requested cell is formatted
+     * @param column the column of the table: name, size, type, resolution, length
+     * @return the text to show in the cell
+     */
+    public String getEntry(int column) {
+        //Name and type are known without reading the file, the rest shows it is still loading
+        if (!this.loaded && column != 0 && column != 2) return "...";
+
+        return switch (column) {
+            case 0 -> this.getName();
+            case 1 -> String.valueOf(this.getSize());
+            case 2 -> this.getType();
+            case 3 -> this.getResolution();
+            //If length is empty replace it with N/A, otherwise add s to show its in seconds
+            default -> this.length == 0 ? "N/A" : this.length + "s";
         };
     }
 
@@ -93,7 +193,21 @@ public class MediaItem {
      * @return the media items file location
      */
     public String getPath() {
-        return this.fileDir;
+        return this.folder.appendPath(new StringBuilder()).append(this.getName()).toString();
+    }
+
+    /**
+     * @return the folder the media file is in
+     */
+    PathTrie.Node getFolder() {
+        return this.folder;
+    }
+
+    /**
+     * @return the name of the media file as UTF-8, the items own array so it mustn't be changed
+     */
+    byte[] getNameBytes() {
+        return this.name;
     }
 
     /**
@@ -101,6 +215,59 @@ public class MediaItem {
      * @return name property of this MediaItem
      */
     public String getName() {
-        return name;
+        return new String(this.name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the type of the media item
+     * @return Image, Audio or Video
+     */
+    public String getType() {
+        return TYPES.get(this.type);
+    }
+
+    /**
+     * Gets the size of the media file
+     * @return the size in MB rounded to 2 decimal places
+     */
+    public float getSize() {
+        //Adjusting the size in bytes to MB
+        float rawSize = this.bytes / 1000000f;
+        //Rounding the value to get the size to 2 decimal places for readability
+        return Math.round(rawSize * 100f) / 100f;
+    }
+
+    /**
+     * Gets the exact size of the media file, used to sort by size
+     * @return the size in bytes
+     */
+    public long getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Gets the resolution of the media item
+     * @return resolution as widthxheight, N/A or Unknown
+     */
+    public String getResolution() {
+        if (this.width == UNKNOWN) return "Unknown";
+        if (this.width == 0 && this.height == 0) return "N/A";
+        return this.width + "x" + this.height;
+    }
+
+    /**
+     * Gets the number of pixels in the media, used to sort by resolution
+     * @return width multiplied by height, 0 if the resolution isn't known
+     */
+    public long getPixels() {
+        return this.width == UNKNOWN ? 0 : (long) this.width * this.height;
+    }
+
+    /**
+     * Gets the length of the recording
+     * @return the length in seconds, 0 if it isn't a recording
+     */
+    public double getLength() {
+        return length;
     }
 }
@@ -0,0 +1,48 @@
+package util;
+
+/**
+ * Gets told about every change made to the media managed by a FileManager, so anything showing the
+ * media can update just the rows that changed. Every function is called on the thread making the change,
+ * which for the dashboard is the Swing event thread.
+ */
+public interface MediaListener {
+    /**
+     * Media items have been added to the media list
+     * @param first index of the first new item
+     * @param last index of the last new item
+     */
+    void mediaInserted(int first, int last);
+
+    /**
+     * Media items have been removed from the media list
+     * @param first index the first removed item had before it was removed
+     * @param last index the last removed item had before it was removed
+     */
+    void mediaRemoved(int first, int last);
+
+    /**
+     * Many media items have been removed from the media list at once, which may not be next to each other
+     * @param indexes the indexes the removed items had before any were removed, sorted
+     */
+    void mediaRemoved(int[] indexes);
+
+    /**
+     * The metadata of media items has changed
+     * @param first index of the first updated item
+     * @param last index of the last updated item
+     */
+    void mediaUpdated(int first, int last);
+
+    /**
+     * Media has been removed from a playlist. The playlist isn't closed up until it is next read, anything
+     * showing it can call FileManager.compactPlaylist to close it up and find the rows that were removed
+     * @param playlist name of the playlist
+     */
+    void playlistMediaRemoved(String playlist);
+
+    /**
+     * A playlist has been added, replaced or removed
+     * @param playlist name of the playlist
+     */
+    void playlistChanged(String playlist);
+}
@@ -0,0 +1,80 @@
+package util;
+
+import java.io.File;
+
+/**
+ * Reads the metadata of one kind of media file. Each probe handles a set of file extensions, and the
+ * ProbeRegistry picks the probe for a file from its extension.
+ * <p>
+ * New formats can be supported without changing the application by putting a jar on the class path that
+ * lists its probe classes in META-INF/services/util.MediaProbe, the registry finds them when it is created.
+ * Probe classes found this way need a public constructor with no parameters.
+ */
+public interface MediaProbe {
+    long DEFAULT_TIMEOUT_MILLIS = 10000; //How long a probe is waited for unless it asks for something else
+
+    /**
+     * The metadata read from a media file
+     */
+    class Metadata {
+        private final String resolution; //Resolution as widthxheight, N/A if the media has none or Unknown if it couldn't be read
+        private final double length; //Length of the recording in seconds, 0 if it isn't a recording
+
+        /**
+         * @param resolution the resolution as widthxheight, N/A or Unknown
+         * @param length the length of the recording in seconds, 0 if it isn't a recording
+         */
+        public Metadata(String resolution, double length) {
+            this.resolution = resolution;
+            this.length = length;
+        }
+
+        /**
+         * @return the resolution as widthxheight, N/A or Unknown
+         */
+        public String getResolution() {
+            return this.resolution;
+        }
+
+        /**
+         * @return the length of the recording in seconds, 0 if it isn't a recording
+         */
+        public double getLength() {
+            return this.length;
+        }
+    }
+
+    /**
+     * @return the type of media shown in the table, such as Image, Audio or Video
+     */
+    String getType();
+
+    /**
+     * @return the file extensions handled, in lower case without the dot
+     */
+    String[] getExtensions();
+
+    /**
+     * Reads the metadata of a file, ran on a background thread
+     * @param file the media file
+     * @return the metadata of the file
+     * @throws Exception if the file couldn't be read
+     */
+    Metadata probe(File file) throws Exception;
+
+    /**
+     * Gets the metadata to use when the file couldn't be read or the probe took too long
+     * @return unknown resolution and no length
+     */
+    default Metadata unreadable() {
+        return new Metadata("Unknown", 0);
+    }
+
+    /**
+     * @return how long the registry waits for a probe in milliseconds before giving up on it, 0 or less to run
+     * the probe straight on the calling thread with no timeout, for probes that can't hang
+     */
+    default long getTimeoutMillis() {
+        return DEFAULT_TIMEOUT_MILLIS;
+    }
+}
@@ -1,7 +1,7 @@
 package util;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableModel;
 
 public class MediaTable extends JTable {
     /**
@@ -10,10 +10,10 @@ public class MediaTable extends JTable {
     public MediaTable() { super(); }
 
     /**
-     * If a DefaultTableModel is provided then pass it into the super
-     * @param model DefaultTableModel to use in construction
+     * If a TableModel is provided then pass it into the super
+     * @param model TableModel to use in construction
      */
-    public MediaTable(DefaultTableModel model) {
+    public MediaTable(TableModel model) {
         super(model);
     }
 
@@ -0,0 +1,347 @@
+package util;
+
+import javax.swing.*;
+import javax.swing.event.TableModelEvent;
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Table model that reads its cells straight from a list of media items instead of copying them into rows,
+ * so only the cells Swing actually draws are ever formatted.
+ * <p>
+ * The rows can be sorted by any column. Sorting compares the typed values of the media rather than the text
+ * shown in the cells, and the sorted order is kept as an array of list indexes that is only worked out again
+ * once the media changes.
+ * <p>
+ * Image media also has a thumbnail column, whose thumbnails are made in the background the first time their
+ * row is drawn, so only rows that are scrolled to are ever decoded.
+ */
+public class MediaTableModel extends AbstractTableModel {
+    public static final int THUMBNAIL_COLUMN = 5; //Column the thumbnails are in, after the columns of the media entry
+    private static final String[] COLUMN_NAMES = { "Name", "Size (MB)", "Media type", "Resolution", "Length", "Thumbnail" };
+    private final ThumbnailCache thumbnails; //Thumbnails of the image media
+    private List<MediaItem> media; //The media list or playlist being displayed
+    private int sortColumn; //Column the rows are sorted by, -1 if they are in the order of the list
+    private boolean ascending; //If the rows are sorted smallest first
+    private int[] order; //Index in the list of the media shown in each row, null if it needs sorting again
+    private final Map<MediaItem, Integer> waitingRows; //Row each thumbnail being made was drawn in, cleared when rows move
+
+    /**
+     * Creates a model with no media in it
+     */
+    public MediaTableModel() {
+        this.media = new ArrayList<>();
+        this.sortColumn = -1;
+        this.ascending = true;
+        this.waitingRows = new HashMap<>();
+        this.thumbnails = new ThumbnailCache(this::fireThumbnailLoaded);
+    }
+
+    /**
+     * @return the thumbnails shown in the thumbnail column
+     */
+    public ThumbnailCache getThumbnails() {
+        return this.thumbnails;
+    }
+
+    /**
+     * Changes the media being displayed, the model keeps reading from the given list rather than a copy
+     * @param media the media list or playlist to display
+     */
+    public void setMedia(List<MediaItem> media) {
+        this.media = media;
+        this.fireTableDataChanged();
+    }
+
+    /**
+     * Sorts the rows by a column, sorting by the same column again swaps the direction
+     * @param column the column to sort by
+     */
+    public void sortBy(int column) {
+        if (column == THUMBNAIL_COLUMN) return; //Thumbnails have no order
+        if (column == this.sortColumn) {
+            this.ascending = !this.ascending;
+            //The rows are already sorted by this column so just turn the order around rather than sorting again
+            if (this.order != null) {
+                reverse(this.order);
+                this.waitingRows.clear();
+                super.fireTableChanged(new TableModelEvent(this));
+                return;
+            }
+        } else {
+            this.sortColumn = column;
+            this.ascending = true;
+        }
+        this.fireTableDataChanged();
+    }
+
+    /**
+     * @return the column the rows are sorted by, -1 if they aren't sorted
+     */
+    public int getSortColumn() {
+        return this.sortColumn;
+    }
+
+    /**
+     * @return true if the rows are sorted smallest first, false if largest first
+     */
+    public boolean isAscending() {
+        return this.ascending;
+    }
+
+    /**
+     * Gets the media item displayed in a row
+     * @param row index of the row in the model
+     * @return the media item for that row
+     */
+    public MediaItem getItem(int row) {
+        return this.media.get(this.toIndex(row));
+    }
+
+    /**
+     * @return the number of media items being shown
+     */
+    @Override
+    public int getRowCount() {
+        return this.media.size();
+    }
+
+    /**
+     * @return the number of columns, one for each piece of metadata and the thumbnail
+     */
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    /**
+     * @param column index of the column
+     * @return the heading of the column
+     */
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    /**
+     * @param column index of the column
+     * @return Icon for the thumbnail column, Object for the others
+     */
+    @Override
+    public Class<?> getColumnClass(int column) {
+        //Lets the table draw the thumbnails as pictures rather than text
+        return column == THUMBNAIL_COLUMN ? Icon.class : Object.class;
+    }
+
+    /**
+     * Reads a cell straight from the media item in the row, thumbnails are made in the background the first
+     * time they are drawn
+     * @param row index of the row in the model
+     * @param column index of the column
+     * @return the value of the cell, the thumbnail is null if the media has none or it isn't ready yet
+     */
+    @Override
+    public Object getValueAt(int row, int column) {
+        MediaItem item = this.media.get(this.toIndex(row));
+        if (column == THUMBNAIL_COLUMN) {
+            Icon icon = this.thumbnails.get(item);
+            //Remember where the row is so only it is redrawn once the thumbnail has been made
+            if (icon == null && this.thumbnails.isPending(item)) this.waitingRows.put(item, row);
+            return icon;
+        }
+        return item.getEntry(column);
+    }
+
+    /**
+     * Redraws the thumbnail cell of the row a thumbnail was waited for in once it has been made
+     * @param item the media item whose thumbnail was made
+     */
+    private void fireThumbnailLoaded(MediaItem item) {
+        Integer row = this.waitingRows.remove(item);
+        if (row == null || row >= this.getRowCount()) return;
+        super.fireTableChanged(new TableModelEvent(this, row, row, THUMBNAIL_COLUMN));
+    }
+
+    /**
+     * Events give the rows in the order of the list, so once the rows are sorted they don't line up with the table.
+     * Any change that could move rows marks the order to be sorted again and refreshes the whole table
+     * @param e the event describing what changed in the list
+     */
+    @Override
+    public void fireTableChanged(TableModelEvent e) {
+        boolean metadataOnly = e.getType() == TableModelEvent.UPDATE && e.getFirstRow() != TableModelEvent.HEADER_ROW
+                && e.getLastRow() != Integer.MAX_VALUE;
+        boolean rowsStay = metadataOnly && (this.sortColumn == -1 || this.sortColumn == 0 || this.sortColumn == 2);
+        //If rows could have moved then any row still waiting for a thumbnail asks again when it is redrawn
+        if (!rowsStay) this.waitingRows.clear();
+
+        if (this.sortColumn != -1 && e.getFirstRow() != TableModelEvent.HEADER_ROW) {
+            if (rowsStay) {
+                //Name and type never change, so the rows stay where they are and only need redrawing
+                e = new TableModelEvent(this, 0, Math.max(0, this.getRowCount() - 1));
+            } else {
+                this.order = null;
+                e = new TableModelEvent(this);
+            }
+        } else {
+            this.order = null;
+        }
+        super.fireTableChanged(e);
+    }
+
+    /**
+     * Gets the index in the list of the media shown in a row
+     * @param row index of the row in the model
+     * @return index of the media in the list
+     */
+    private int toIndex(int row) {
+        if (this.sortColumn == -1) return row;
+        if (this.order == null) this.order = this.sort();
+        return this.order[row];
+    }
+
+    /**
+     * Works out the order of the rows for the sorted column
+     * @return the index in the list of the media for each row
+     */
+    private int[] sort() {
+        int count = this.media.size();
+        int[] order = new int[count];
+
+        if (this.sortColumn == 0 || this.sortColumn == 2) {
+            //Text columns, the values are pulled out once so comparisons don't go through the media items.
+            //Names are lower cased up front so the sort only has to compare characters
+            String[] keys = new String[count];
+            for (int i = 0; i < count; i++) {
+                MediaItem item = this.media.get(i);
+                keys[i] = this.sortColumn == 0 ? item.getName().toLowerCase(Locale.ROOT) : item.getType();
+                order[i] = i;
+            }
+            sortText(order, keys, 0, count - 1, 0);
+        } else {
+            //Number columns, each row is packed into a long as its value in the top half and its index in the
+            //bottom half, so sorting the longs sorts by value and keeps equal values in list order
+            long[] packed = new long[count];
+            for (int i = 0; i < count; i++) {
+                packed[i] = ((long) this.numberKey(this.media.get(i)) << 32) | i;
+            }
+            Arrays.sort(packed);
+            for (int i = 0; i < count; i++) order[i] = (int) packed[i];
+        }
+
+        if (!this.ascending) reverse(order);
+        return order;
+    }
+
+    /**
+     * Sorts list indexes by their text, one character position at a time (three way radix quicksort).
+     * Names often share a start like IMG_, which a normal sort compares again in every comparison, here each
+     * shared character is only looked at once per row. Rows with the same text stay in list order
+     * @param rows the list indexes to sort
+     * @param keys the text of each list index
+     * @param lo first position in rows to sort
+     * @param hi last position in rows to sort
+     * @param depth the character position all the rows being sorted already match up to
+     */
+    private static void sortText(int[] rows, String[] keys, int lo, int hi, int depth) {
+        while (hi > lo) {
+            //Small ranges are quicker to sort by inserting each row into place
+            if (hi - lo < 16) {
+                for (int i = lo + 1; i <= hi; i++) {
+                    int row = rows[i];
+                    int j = i - 1;
+                    for (; j >= lo && compareText(keys, rows[j], row) > 0; j--) rows[j + 1] = rows[j];
+                    rows[j + 1] = row;
+                }
+                return;
+            }
+
+            //Split the rows into those with a smaller, equal or bigger character at this position than the middle row
+            int pivot = charAt(keys[rows[lo + (hi - lo) / 2]], depth);
+            int less = lo;
+            int greater = hi;
+            int i = lo;
+            while (i <= greater) {
+                int c = charAt(keys[rows[i]], depth);
+                if (c < pivot) swap(rows, less++, i++);
+                else if (c > pivot) swap(rows, i, greater--);
+                else i++;
+            }
+
+            sortText(rows, keys, lo, less - 1, depth);
+            //Rows with the same character carry on to the next one, unless their text has ended
+            if (pivot >= 0) sortText(rows, keys, less, greater, depth + 1);
+            else Arrays.sort(rows, less, greater + 1);
+            //Loop for the last range rather than recursing so long runs of bigger characters don't go deep
+            lo = greater + 1;
+        }
+    }
+
+    /**
+     * Compares the text of two list indexes, using the index when the text is the same
+     * @param keys the text of each list index
+     * @param a the first list index
+     * @param b the second list index
+     * @return negative if a sorts first, positive if b sorts first
+     */
+    private static int compareText(String[] keys, int a, int b) {
+        int compare = keys[a].compareTo(keys[b]);
+        return compare != 0 ? compare : Integer.compare(a, b);
+    }
+
+    /**
+     * Gets a character of some text for sorting, text that has ended sorts before any character
+     * @param text the text to read from
+     * @param position index of the character
+     * @return the character at the position, -1 if the text is shorter than that
+     */
+    private static int charAt(String text, int position) {
+        return position < text.length() ? text.charAt(position) : -1;
+    }
+
+    /**
+     * Swaps two rows of an order
+     * @param rows the list indexes being sorted
+     * @param a position of the first row
+     * @param b position of the second row
+     */
+    private static void swap(int[] rows, int a, int b) {
+        int swap = rows[a];
+        rows[a] = rows[b];
+        rows[b] = swap;
+    }
+
+    /**
+     * Turns an order around, for sorting largest first
+     * @param order the list indexes to reverse
+     */
+    private static void reverse(int[] order) {
+        for (int i = 0, j = order.length - 1; i < j; i++, j--) {
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+    }
+
+    /**
+     * Gets the value of a number column as an int that sorts in the same order as the value.
+     * The bits of a positive float already sort in order, so size and length only need negative values taken
+     * up to 0, which also keeps every key above the one for media that is still loading. That media sorts
+     * before everything else
+     * @param item the media item
+     * @return the sort key for the sorted column
+     */
+    private int numberKey(MediaItem item) {
+        if (!item.isLoaded()) return -1;
+        return switch (this.sortColumn) {
+            case 1 -> Float.floatToIntBits(Math.max(0f, (float) item.getBytes()));
+            case 3 -> (int) Math.max(0, Math.min(item.getPixels(), Integer.MAX_VALUE));
+            default -> Float.floatToIntBits(Math.max(0f, (float) item.getLength()));
+        };
+    }
+}
@@ -0,0 +1,225 @@
+package util;
+
+import java.io.*;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sidecar file stored next to the media library file that remembers the metadata of each media file,
+ * so files that haven't changed don't need to be probed again when the library is reopened.
+ * <p>
+ * Invalidation rules:
+ * <ul>
+ *     <li>An entry is only used if the files current size and last modified time match the stored ones,
+ *     otherwise the file is probed again and the entry is replaced.</li>
+ *     <li>Files that don't exist or have no modified time are never cached.</li>
+ *     <li>Only entries for media currently in the library are written, so removed media drop out on the next write.</li>
+ *     <li>A cache file that can't be read or has a different version heading is ignored completely.</li>
+ * </ul>
+ * Entries are keyed by the media files absolute path rather than anything about the library file, and the
+ * sidecar is named after the library file, so moving the library along with its sidecar keeps the cache valid.
+ */
+public class MetadataCache {
+    private static final String HEADING = "[MediaLibraryMetadataCache]"; //First value in every cache file
+    private static final int VERSION = 2; //Bumped whenever the stored fields change so old caches are ignored
+
+    private final Map<String, Entry> entries; //Cached metadata keyed by the media files path
+    //Set from probe threads and read on the event thread, so it is volatile
+    private volatile boolean changed; //If entries have been added or replaced since the cache was last read or written
+
+    /**
+     * The metadata stored for a single media file along with what is used to check it's still valid
+     */
+    private static class Entry {
+        private final long bytes; //Size of the file in bytes when it was probed
+        private final long modified; //Last modified time of the file when it was probed
+        private final String type; //Type of the media
+        private final float size; //Size in MB as shown in the table
+        private final String resolution; //Resolution of the media
+        private final double length; //Length of the recording in seconds
+
+        private Entry(long bytes, long modified, String type, float size, String resolution, double length) {
+            this.bytes = bytes;
+            this.modified = modified;
+            this.type = type;
+            this.size = size;
+            this.resolution = resolution;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Creates an empty cache
+     */
+    public MetadataCache() {
+        //Concurrent since the probe pool looks up and adds entries from several threads at once
+        this.entries = new ConcurrentHashMap<>();
+        this.changed = false;
+    }
+
+    /**
+     * Gets the sidecar cache file for a media library file
+     * @param library the media library file
+     * @return the cache file next to the library
+     */
+    public static File cacheFileFor(File library) {
+        return new File(library.getPath() + ".cache");
+    }
+
+    /**
+     * Replaces the cached entries with the ones stored next to the given library file.
+     * If there is no cache or it can't be read then the cache is just left empty.
+     * @param library the media library file the cache belongs to
+     */
+    public void load(File library) {
+        this.entries.clear();
+        this.changed = false;
+        File cacheFile = cacheFileFor(library);
+        if (!cacheFile.exists()) return;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+            //Check the heading and version so an unrelated or outdated file isn't read as a cache
+            if (!in.readUTF().equals(HEADING) || in.readInt() != VERSION) return;
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                this.entries.put(path, readFields(in));
+            }
+        } catch (IOException e) {
+            //A partial cache can't be trusted so start again with an empty one
+            this.entries.clear();
+        }
+    }
+
+    /**
+     * Gets a media item from the cache if the file hasn't changed since it was cached
+     * @param path the path of the media file
+     * @param bytes the files current size in bytes
+     * @param modified the files current last modified time
+     * @return the cached media item, or null if there's no valid entry for the file
+     */
+    public MediaItem get(String path, long bytes, long modified) {
+        Entry entry = this.entries.get(path);
+        if (entry == null) return null;
+        //The file has changed since it was cached so the entry is no longer valid
+        if (entry.bytes != bytes || entry.modified != modified) {
+            this.entries.remove(path);
+            this.changed = true;
+            return null;
+        }
+        return new MediaItem(path, entry.type, entry.bytes, entry.resolution, entry.length);
+    }
+
+    /**
+     * Adds or replaces the cached metadata for a media file
+     * @param item the media item that was just probed
+     * @param bytes the files size in bytes before it was probed
+     * @param modified the files last modified time before it was probed
+     */
+    public void put(MediaItem item, long bytes, long modified) {
+        //A modified time of 0 means the file doesn't exist or couldn't be read, so nothing worth caching
+        if (modified == 0) return;
+        this.entries.put(item.getPath(), new Entry(bytes, modified, item.getType(),
+                item.getSize(), item.getResolution(), item.getLength()));
+        this.changed = true;
+    }
+
+    /**
+     * Checks if the cache has entries that haven't been written yet
+     * @return true if the cache should be saved, false otherwise
+     */
+    public boolean hasChanges() {
+        return this.changed;
+    }
+
+    /**
+     * Writes the cached metadata for the given media next to the library file
+     * @param library the media library file the cache belongs to
+     * @param media all media in the library, entries for anything else are dropped
+     * @return true if the cache was written successfully, false otherwise
+     */
+    public boolean save(File library, List<MediaItem> media) {
+        try {
+            //Written through a temp file so a crash never leaves a partial cache behind
+            AtomicFile.write(cacheFileFor(library), stream -> {
+                DataOutputStream out = new DataOutputStream(stream);
+                out.writeUTF(HEADING);
+                out.writeInt(VERSION);
+
+                //Count first since only media that has a valid entry is written
+                int count = 0;
+                for (MediaItem item : media) {
+                    if (this.entries.containsKey(item.getPath())) count++;
+                }
+                out.writeInt(count);
+
+                for (MediaItem item : media) {
+                    Entry entry = this.entries.get(item.getPath());
+                    if (entry == null) continue;
+                    out.writeUTF(item.getPath());
+                    writeFields(entry, out);
+                }
+                out.flush();
+            });
+            this.changed = false;
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the cached metadata for a media file into another file, such as a binary library file
+     * @param path the path of the media file
+     * @param out the stream to write to
+     * @throws IOException if the stream couldn't be written to
+     */
+    void writeEntry(String path, DataOutputStream out) throws IOException {
+        //Flag first so files that have never been probed take up a single byte
+        Entry entry = this.entries.get(path);
+        out.writeBoolean(entry != null);
+        if (entry != null) writeFields(entry, out);
+    }
+
+    /**
+     * Reads metadata written by writeEntry and adds it to the cache, it is still checked against the file
+     * before being used by get
+     * @param path the path of the media file
+     * @param in the stream to read from
+     * @return a media item with the stored metadata, or null if none was stored
+     * @throws IOException if the stream couldn't be read
+     */
+    MediaItem readEntry(String path, DataInputStream in) throws IOException {
+        if (!in.readBoolean()) return null;
+        Entry entry = readFields(in);
+        this.entries.put(path, entry);
+        return new MediaItem(path, entry.type, entry.bytes, entry.resolution, entry.length);
+    }
+
+    /**
+     * Writes the fields of an entry
+     * @param entry the entry to write
+     * @param out the stream to write to
+     * @throws IOException if the stream couldn't be written to
+     */
+    private static void writeFields(Entry entry, DataOutputStream out) throws IOException {
+        out.writeLong(entry.bytes);
+        out.writeLong(entry.modified);
+        out.writeUTF(entry.type);
+        out.writeFloat(entry.size);
+        out.writeUTF(entry.resolution);
+        out.writeDouble(entry.length);
+    }
+
+    /**
+     * Reads the fields of an entry written by writeFields
+     * @param in the stream to read from
+     * @return the entry read
+     * @throws IOException if the stream couldn't be read
+     */
+    private static Entry readFields(DataInputStream in) throws IOException {
+        return new Entry(in.readLong(), in.readLong(), in.readUTF(), in.readFloat(), in.readUTF(), in.readDouble());
+    }
+}
@@ -0,0 +1,163 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the length and resolution of an MP4 video from its boxes, without reading the video itself.
+ * <p>
+ * An MP4 file is a list of boxes, each starting with its size and a four letter type, and some boxes hold
+ * more boxes inside them. The length is in the movie header (moov/mvhd) and the resolution is in the track
+ * header of the video track (moov/trak/tkhd). Boxes that aren't needed are skipped by seeking past them, so
+ * the video data (mdat) is never read even when the moov box comes after it at the end of the file, and
+ * probing any size of video only reads a few KB.
+ */
+class Mp4Reader {
+    private static final int MAX_DEPTH = 4; //Deepest box looked inside, moov/trak/mdia/hdlr is as deep as needed
+
+    private final RandomAccessFile file; //The video being read
+    private long timescale; //Units per second of the movie duration
+    private long duration; //Length of the movie in timescale units, 0 if not found
+    private int width; //Width of the video track in pixels, 0 if not found
+    private int height; //Height of the video track in pixels, 0 if not found
+    private int trackWidth; //Width from the header of the track currently being read
+    private int trackHeight; //Height from the header of the track currently being read
+    private boolean videoTrack; //If the track currently being read has the video handler
+    private boolean foundVideo; //If the width and height came from a video track
+
+    /**
+     * Reads the boxes of an MP4 file
+     * @param file the video file
+     * @throws IOException if the file couldn't be read or isn't an MP4 file
+     */
+    Mp4Reader(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            this.file = in;
+            this.readBoxes(0, in.length(), 0);
+        }
+        if (this.timescale == 0 && this.width == 0) throw new IOException("No movie header in " + file);
+    }
+
+    /**
+     * @return the length of the video in seconds, 0 if it isn't known
+     */
+    double getLength() {
+        return this.timescale == 0 ? 0 : (double) this.duration / this.timescale;
+    }
+
+    /**
+     * @return the resolution as widthxheight, or Unknown if the file has no video track
+     */
+    String getResolution() {
+        return this.width == 0 || this.height == 0 ? "Unknown" : this.width + "x" + this.height;
+    }
+
+    /**
+     * Walks through the boxes in part of the file, looking inside the boxes on the way to the headers
+     * @param start position of the first box
+     * @param end position the boxes stop at
+     * @param depth how many boxes these are inside of
+     * @throws IOException if the file couldn't be read
+     */
+    private void readBoxes(long start, long end, int depth) throws IOException {
+        long position = start;
+        while (position + 8 <= end) {
+            this.file.seek(position);
+            long size = this.file.readInt() & 0xFFFFFFFFL;
+            String type = this.readType();
+            long header = 8;
+            if (size == 1) {
+                //Boxes bigger than 4GB, usually mdat, store their size as a long after the type
+                size = this.file.readLong();
+                header = 16;
+            } else if (size == 0) {
+                size = end - position; //Last box, goes to the end of the file
+            }
+            if (size < header || position + size > end) return; //Damaged or cut off, use what was found so far
+
+            long body = position + header;
+            long next = position + size;
+            switch (type) {
+                case "moov", "mdia" -> {
+                    if (depth < MAX_DEPTH) this.readBoxes(body, next, depth + 1);
+                }
+                case "trak" -> {
+                    this.trackWidth = 0;
+                    this.trackHeight = 0;
+                    this.videoTrack = false;
+                    if (depth < MAX_DEPTH) this.readBoxes(body, next, depth + 1);
+                    //Use the first video track, or any track with a size if the handlers couldn't be read
+                    if (this.trackWidth != 0 && (this.videoTrack ? !this.foundVideo : this.width == 0)) {
+                        this.width = this.trackWidth;
+                        this.height = this.trackHeight;
+                        this.foundVideo = this.videoTrack;
+                    }
+                }
+                case "mvhd" -> this.readMovieHeader();
+                case "tkhd" -> this.readTrackHeader();
+                case "hdlr" -> {
+                    //Version and flags, pre defined, then the handler type
+                    this.file.seek(body + 8);
+                    if (this.readType().equals("vide")) this.videoTrack = true;
+                }
+                default -> {
+                    //Anything else, including the video data, is skipped without being read
+                }
+            }
+            //The movie box holds everything needed, so there is no need to look at anything after it
+            if (depth == 0 && type.equals("moov")) return;
+            position = next;
+        }
+    }
+
+    /**
+     * Reads the timescale and duration from the movie header, the file is positioned at the start of its body.
+     * Version 1 headers use longs for the times and duration so they fit videos longer than 4GB of units
+     * @throws IOException if the file couldn't be read
+     */
+    private void readMovieHeader() throws IOException {
+        int version = this.file.readUnsignedByte();
+        this.file.skipBytes(3); //Flags
+        if (version == 1) {
+            this.file.skipBytes(16); //Creation and modification times
+            this.timescale = this.file.readInt() & 0xFFFFFFFFL;
+            this.duration = this.file.readLong();
+        } else {
+            this.file.skipBytes(8);
+            this.timescale = this.file.readInt() & 0xFFFFFFFFL;
+            this.duration = this.file.readInt() & 0xFFFFFFFFL;
+            //All ones means the duration isn't known
+            if (this.duration == 0xFFFFFFFFL) this.duration = 0;
+        }
+        if (this.duration < 0) this.duration = 0;
+    }
+
+    /**
+     * Reads the width and height from a track header, the file is positioned at the start of its body.
+     * They are stored at the end as 16.16 fixed point numbers
+     * @throws IOException if the file couldn't be read
+     */
+    private void readTrackHeader() throws IOException {
+        int version = this.file.readUnsignedByte();
+        this.file.skipBytes(3); //Flags
+        //Times, track id, reserved and duration, which are bigger in version 1
+        this.file.skipBytes(version == 1 ? 32 : 20);
+        //Reserved, layer, alternate group, volume, reserved and the matrix
+        this.file.skipBytes(8 + 8 + 36);
+        this.trackWidth = this.file.readInt() >>> 16;
+        this.trackHeight = this.file.readInt() >>> 16;
+    }
+
+    /**
+     * Reads a four letter box or handler type
+     * @return the type
+     * @throws IOException if the file couldn't be read
+     */
+    private String readType() throws IOException {
+        byte[] type = new byte[4];
+        this.file.readFully(type);
+        return new String(type, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,160 @@
+package util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Media items keyed by their normalised path, used to spot files that are already in the library.
+ * <p>
+ * No paths are stored. Each media item already holds its folder in the PathTrie and the bytes of its name, so
+ * the index is a hash table of the media items themselves, hashed by their folder and name. Looking a path up
+ * splits it into the same folder and name and compares them with the items in the table, so the only memory
+ * used for each item is its slot. Items whose own path isn't already normalised, which only happens when a
+ * library file was edited by hand, can't be found that way and are kept in a small map by path instead.
+ * <p>
+ * Paths are looked up from the scan threads while media is added on the event thread, so every function is
+ * synchronized.
+ */
+final class PathIndex {
+    private MediaItem[] slots; //Media items by hash, null for an empty slot
+    private int size; //Number of media items in the slots
+    private final Map<String, MediaItem> unnormalised; //Media items whose path isn't normalised, by normalised path
+
+    PathIndex() {
+        this.slots = new MediaItem[16];
+        this.unnormalised = new HashMap<>();
+    }
+
+    /**
+     * Finds the media item for a path
+     * @param path the normalised path
+     * @return the media item, null if no item has the path
+     */
+    synchronized MediaItem get(String path) {
+        int slot = this.find(path);
+        if (slot != -1) return this.slots[slot];
+        return this.unnormalised.isEmpty() ? null : this.unnormalised.get(path);
+    }
+
+    /**
+     * @param path the normalised path
+     * @return true if a media item has the path
+     */
+    synchronized boolean containsKey(String path) {
+        return this.get(path) != null;
+    }
+
+    /**
+     * Adds a media item unless another item already has its path
+     * @param path the normalised path of the item
+     * @param item the media item
+     * @return the item that already had the path, null if the item was added
+     */
+    synchronized MediaItem putIfAbsent(String path, MediaItem item) {
+        MediaItem existing = this.get(path);
+        if (existing != null) return existing;
+        if (!item.getPath().equals(path)) {
+            this.unnormalised.put(path, item);
+            return null;
+        }
+        if ((this.size + 1) * 2 > this.slots.length) this.resize();
+        int mask = this.slots.length - 1;
+        int slot = hash(item.getFolder(), item.getNameBytes()) & mask;
+        while (this.slots[slot] != null) slot = (slot + 1) & mask;
+        this.slots[slot] = item;
+        this.size++;
+        return null;
+    }
+
+    /**
+     * Adds a media item, replacing any item that already has its path
+     * @param path the normalised path of the item
+     * @param item the media item
+     */
+    synchronized void put(String path, MediaItem item) {
+        MediaItem existing = this.get(path);
+        if (existing != null) this.remove(path, existing);
+        this.putIfAbsent(path, item);
+    }
+
+    /**
+     * Removes a media item if it is the one indexed for its path
+     * @param path the normalised path of the item
+     * @param item the media item
+     * @return true if the item was removed
+     */
+    synchronized boolean remove(String path, MediaItem item) {
+        int slot = this.find(path);
+        if (slot == -1 || this.slots[slot] != item) return this.unnormalised.remove(path, item);
+
+        //Shift back any items after the slot that were pushed past it, so lookups never stop at the gap early
+        int mask = this.slots.length - 1;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (this.slots[next] != null) {
+            int home = hash(this.slots[next].getFolder(), this.slots[next].getNameBytes()) & mask;
+            //Move the item if its home slot isn't between the gap and where it is now
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                this.slots[gap] = this.slots[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        this.slots[gap] = null;
+        this.size--;
+        return true;
+    }
+
+    /**
+     * Removes every media item
+     */
+    synchronized void clear() {
+        this.slots = new MediaItem[16];
+        this.size = 0;
+        this.unnormalised.clear();
+    }
+
+    /**
+     * Finds the slot of the media item stored under a path, without adding anything to the PathTrie
+     * @param path the normalised path
+     * @return the slot, -1 if no item in the table has the path
+     */
+    private int find(String path) {
+        int nameStart = PathTrie.nameStart(path);
+        PathTrie.Node folder = nameStart == 0 ? PathTrie.ROOT : PathTrie.find(path.substring(0, nameStart));
+        if (folder == null) return -1; //No media has ever been in the folder
+        byte[] name = path.substring(nameStart).getBytes(StandardCharsets.UTF_8);
+
+        int mask = this.slots.length - 1;
+        for (int slot = hash(folder, name) & mask; this.slots[slot] != null; slot = (slot + 1) & mask) {
+            MediaItem item = this.slots[slot];
+            if (item.getFolder() == folder && Arrays.equals(item.getNameBytes(), name)) return slot;
+        }
+        return -1;
+    }
+
+    /**
+     * Doubles the number of slots, moving every item to its slot in the bigger table
+     */
+    private void resize() {
+        MediaItem[] old = this.slots;
+        this.slots = new MediaItem[old.length * 2];
+        int mask = this.slots.length - 1;
+        for (MediaItem item : old) {
+            if (item == null) continue;
+            int slot = hash(item.getFolder(), item.getNameBytes()) & mask;
+            while (this.slots[slot] != null) slot = (slot + 1) & mask;
+            this.slots[slot] = item;
+        }
+    }
+
+    /**
+     * @return the hash of a folder and file name, folders are compared by identity as each is only in the tree once
+     */
+    private static int hash(PathTrie.Node folder, byte[] name) {
+        int hash = System.identityHashCode(folder) * 31 + Arrays.hashCode(name);
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,115 @@
+package util;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tree of every folder that holds media, shared by the whole application. Each folder is stored as its own name
+ * and a link to the folder it is in, so a long path like C:\Users\name\Pictures\ is only stored once however many
+ * folders and files are inside it. Full paths are only put together when they are asked for.
+ * <p>
+ * Folders are added from many probe threads at once, so the children of each folder are kept in a concurrent map.
+ * Folders are never removed, there are far fewer of them than media files.
+ */
+final class PathTrie {
+    static final Node ROOT = new Node(null, ""); //Parent of every top level folder, its path is empty
+
+    /**
+     * A folder in the tree
+     */
+    static final class Node {
+        private final Node parent; //Folder this one is in, null for the root
+        private final String segment; //Name of the folder including its trailing separator, so segments join into the path
+        private final Map<String, Node> children; //Folders inside this one by segment
+
+        private Node(Node parent, String segment) {
+            this.parent = parent;
+            this.segment = segment;
+            this.children = new ConcurrentHashMap<>(4);
+        }
+
+        /**
+         * @return the full path of the folder, ending with a separator
+         */
+        String getPath() {
+            return this.appendPath(new StringBuilder()).toString();
+        }
+
+        /**
+         * Adds the full path of the folder to some text
+         * @param text the text to add to
+         * @return the same text
+         */
+        StringBuilder appendPath(StringBuilder text) {
+            if (this.parent != null) this.parent.appendPath(text);
+            return text.append(this.segment);
+        }
+
+        /**
+         * @return the folders directly inside this one
+         */
+        Collection<Node> getChildren() {
+            return this.children.values();
+        }
+    }
+
+    private PathTrie() {
+    }
+
+    /**
+     * Gets the folder a file is in, adding it and any folders above it to the tree if they aren't there yet
+     * @param path the path of the file
+     * @return the folder, everything up to and including the last separator of the path
+     */
+    static Node folderOf(String path) {
+        Node node = ROOT;
+        int start = 0;
+        for (int i = 0; i < path.length(); i++) {
+            if (!isSeparator(path.charAt(i))) continue;
+            String segment = path.substring(start, i + 1);
+            Node parent = node;
+            node = parent.children.computeIfAbsent(segment, key -> new Node(parent, key));
+            start = i + 1;
+        }
+        return node;
+    }
+
+    /**
+     * Finds a folder without adding anything to the tree
+     * @param folder the path of the folder, with or without a trailing separator
+     * @return the folder, null if no media has ever been in it
+     */
+    static Node find(String folder) {
+        if (folder.isEmpty() || !isSeparator(folder.charAt(folder.length() - 1))) folder += File.separator;
+        Node node = ROOT;
+        int start = 0;
+        for (int i = 0; i < folder.length() && node != null; i++) {
+            if (!isSeparator(folder.charAt(i))) continue;
+            node = node.children.get(folder.substring(start, i + 1));
+            start = i + 1;
+        }
+        return node;
+    }
+
+    /**
+     * Gets where the file name starts in a path
+     * @param path the path of a file
+     * @return the index after the last separator
+     */
+    static int nameStart(String path) {
+        for (int i = path.length() - 1; i >= 0; i--) {
+            if (isSeparator(path.charAt(i))) return i + 1;
+        }
+        return 0;
+    }
+
+    /**
+     * @param c a character of a path
+     * @return true if it separates folders, / is accepted everywhere as Java does
+     */
+    private static boolean isSeparator(char c) {
+        return c == '/' || c == File.separatorChar;
+    }
+}
@@ -0,0 +1,172 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The media in a playlist, kept both in play order and as a bit set of the ordinals of the media in it.
+ * The bit set answers whether media is in the playlist without searching the list, and lets playlists be
+ * combined a whole word of media at a time.
+ * <p>
+ * Ordinals are given out by the FileManager in the order media is added and never reused while the library
+ * is open, so the bits stay packed together at the start of the set.
+ * <p>
+ * Removing media only clears its bit, which takes constant time for one item and one pass of the bit set for
+ * many, however many playlists there are. An ordered list can't have media taken out of
+ * the middle in constant time, so the media stays in the list with its bit clear until the list is next read,
+ * when all the removed media is closed up in a single pass. However many removals there have been the list is
+ * only looked through once, and playlists nobody reads are never looked through at all.
+ */
+public class Playlist {
+    private final List<MediaItem> media; //Media in the order it is played
+    private final BitSet members; //Ordinal of every media item in the playlist
+    private int removed; //Media in the list that has been removed but not closed up yet
+
+    /**
+     * Creates an empty playlist
+     */
+    Playlist() {
+        this.media = new ArrayList<>();
+        this.members = new BitSet();
+    }
+
+    /**
+     * Creates a playlist holding some media, media listed more than once is only added the first time
+     * @param media the media in play order
+     */
+    Playlist(List<MediaItem> media) {
+        this();
+        for (MediaItem item : media) this.add(item);
+    }
+
+    /**
+     * @return the media in play order, this is the playlist's own list so it shouldn't be changed
+     */
+    public List<MediaItem> getMedia() {
+        this.compact();
+        return this.media;
+    }
+
+    /**
+     * Checks if media is in the playlist in constant time
+     * @param item the media item
+     * @return true if the item is in the playlist
+     */
+    public boolean contains(MediaItem item) {
+        return item.getOrdinal() >= 0 && this.members.get(item.getOrdinal());
+    }
+
+    /**
+     * Adds media to the end of the playlist
+     * @param item the media item
+     * @return true if it was added, false if it was already in the playlist
+     */
+    boolean add(MediaItem item) {
+        if (this.contains(item)) return false;
+        //Removed media may still be in the list, so close it up before the item could be listed twice
+        this.compact();
+        this.media.add(item);
+        if (item.getOrdinal() >= 0) this.members.set(item.getOrdinal());
+        return true;
+    }
+
+    /**
+     * Removes media from the playlist in constant time, it is closed up the next time the list is read
+     * @param item the media item
+     * @return true if it was removed, false if it wasn't in the playlist
+     */
+    boolean remove(MediaItem item) {
+        if (!this.contains(item)) return false;
+        this.members.clear(item.getOrdinal());
+        this.removed++;
+        return true;
+    }
+
+    /**
+     * Removes many media items from the playlist in one pass of the bit set, they are closed up the next time
+     * the list is read
+     * @param ordinals the ordinals of the media items to remove
+     * @return the number of items that were in the playlist
+     */
+    int removeAll(BitSet ordinals) {
+        if (!this.members.intersects(ordinals)) return 0;
+        int count = this.members.cardinality();
+        this.members.andNot(ordinals);
+        count -= this.members.cardinality();
+        this.removed += count;
+        return count;
+    }
+
+    /**
+     * Closes up the gaps left by removed media in one pass of the playlist
+     * @return the indexes the removed media was at in play order, empty if nothing has been removed
+     */
+    int[] compact() {
+        if (this.removed == 0) return new int[0];
+        int[] indexes = new int[this.removed];
+        int found = 0;
+        int kept = 0;
+        for (int i = 0; i < this.media.size(); i++) {
+            MediaItem item = this.media.get(i);
+            //Media without an ordinal is never in the bit set and can't have been removed
+            if (item.getOrdinal() < 0 || this.members.get(item.getOrdinal())) this.media.set(kept++, item);
+            else indexes[found++] = i;
+        }
+        this.media.subList(kept, this.media.size()).clear();
+        this.removed = 0;
+        return indexes;
+    }
+
+    /**
+     * Gets the media in this playlist or another, this playlist's media comes first
+     * @param other the other playlist
+     * @return the media in play order
+     */
+    public List<MediaItem> union(Playlist other) {
+        BitSet extra = (BitSet) other.members.clone();
+        extra.andNot(this.members);
+        List<MediaItem> result = new ArrayList<>(this.getMedia());
+        addMembers(other.media, extra, result);
+        return result;
+    }
+
+    /**
+     * Gets the media in both this playlist and another
+     * @param other the other playlist
+     * @return the media in this playlist's order
+     */
+    public List<MediaItem> intersect(Playlist other) {
+        BitSet both = (BitSet) this.members.clone();
+        both.and(other.members);
+        List<MediaItem> result = new ArrayList<>();
+        addMembers(this.media, both, result);
+        return result;
+    }
+
+    /**
+     * Gets the media in this playlist that isn't in another
+     * @param other the other playlist
+     * @return the media in this playlist's order
+     */
+    public List<MediaItem> difference(Playlist other) {
+        BitSet left = (BitSet) this.members.clone();
+        left.andNot(other.members);
+        List<MediaItem> result = new ArrayList<>();
+        addMembers(this.media, left, result);
+        return result;
+    }
+
+    /**
+     * Adds the media whose ordinal is in a set to a list, keeping their order
+     * @param media the media to pick from
+     * @param set ordinals of the media to add
+     * @param result the list to add to
+     */
+    private static void addMembers(List<MediaItem> media, BitSet set, List<MediaItem> result) {
+        if (set.isEmpty()) return;
+        for (MediaItem item : media) {
+            if (item.getOrdinal() >= 0 && set.get(item.getOrdinal())) result.add(item);
+        }
+    }
+}
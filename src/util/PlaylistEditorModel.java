@@ -0,0 +1,261 @@
+package util;
+
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableModel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The media being moved in and out of a playlist in the playlist editor, shown as two tables: the playlist and
+ * the rest of the library.
+ * <p>
+ * Neither table copies the media into rows. The playlist table reads from the playlist in play order, and the
+ * other table reads the library through a RankIndex of the library positions that aren't in the playlist, so
+ * each row is found in O(log n). Moving media only changes the index and fires events for the rows that moved,
+ * so moving a row in a library of any size doesn't redraw either table.
+ */
+public class PlaylistEditorModel {
+    private final PlaylistView playlistView; //Table of the media in the playlist
+    private final OtherView otherView; //Table of the library media not in the playlist
+    private MediaItem[] library; //All media in the library when the editor was opened, in library order
+    private int[] positions; //Position in the library of the media with each ordinal, -1 if it isn't there
+    private BitSet others; //Library positions of the media not in the playlist
+    private RankIndex otherRows; //The same positions, for turning them into rows of the other table
+    private List<MediaItem> playlist; //Media in the playlist in play order
+
+    /**
+     * Creates a model with no media in either table
+     */
+    public PlaylistEditorModel() {
+        this.playlistView = new PlaylistView();
+        this.otherView = new OtherView();
+        this.open(new ArrayList<>(), new ArrayList<>());
+    }
+
+    /**
+     * Fills the tables with a playlist and the rest of the library
+     * @param media all the media in the library
+     * @param playlist the media in the playlist in play order, which isn't changed
+     */
+    public void open(List<MediaItem> media, List<MediaItem> playlist) {
+        this.library = media.toArray(new MediaItem[0]);
+        this.playlist = new ArrayList<>(playlist);
+
+        //Ordinals are handed out as media is added so the largest is at most the number ever added
+        int maxOrdinal = -1;
+        for (MediaItem item : this.library) maxOrdinal = Math.max(maxOrdinal, item.getOrdinal());
+        this.positions = new int[maxOrdinal + 1];
+        Arrays.fill(this.positions, -1);
+        for (int i = 0; i < this.library.length; i++) {
+            if (this.library[i].getOrdinal() >= 0) this.positions[this.library[i].getOrdinal()] = i;
+        }
+
+        //Everything starts in the other table apart from the media in the playlist
+        this.others = new BitSet(this.library.length);
+        this.others.set(0, this.library.length);
+        for (MediaItem item : this.playlist) {
+            int position = this.positionOf(item);
+            if (position != -1) this.others.clear(position);
+        }
+        this.otherRows = new RankIndex(this.others, this.library.length);
+
+        this.playlistView.fireTableDataChanged();
+        this.otherView.fireTableDataChanged();
+    }
+
+    /**
+     * @return the table of the media in the playlist
+     */
+    public TableModel getPlaylistTable() {
+        return this.playlistView;
+    }
+
+    /**
+     * @return the table of the library media that isn't in the playlist
+     */
+    public TableModel getOtherTable() {
+        return this.otherView;
+    }
+
+    /**
+     * @return the media in the playlist in play order
+     */
+    public List<MediaItem> getPlaylistMedia() {
+        return this.playlist;
+    }
+
+    /**
+     * Moves rows of the other table to the end of the playlist, keeping the order they are in the library
+     * @param rows the rows of the other table
+     */
+    public void addToPlaylist(int[] rows) {
+        if (rows.length == 0) return;
+        rows = rows.clone();
+        Arrays.sort(rows);
+
+        //Find every position before any are taken out, as taking one out moves the rows after it
+        int[] moved = new int[rows.length];
+        for (int i = 0; i < rows.length; i++) moved[i] = this.otherRows.select(rows[i]);
+
+        int first = this.playlist.size();
+        for (int position : moved) {
+            this.others.clear(position);
+            this.otherRows.add(position, -1);
+            this.playlist.add(this.library[position]);
+        }
+
+        fireRowsDeleted(this.otherView, rows);
+        this.playlistView.fireTableRowsInserted(first, this.playlist.size() - 1);
+    }
+
+    /**
+     * Moves rows of the playlist back to the other table, where they go back to their place in the library
+     * @param rows the rows of the playlist table
+     */
+    public void removeFromPlaylist(int[] rows) {
+        if (rows.length == 0) return;
+        rows = rows.clone();
+        Arrays.sort(rows);
+
+        MediaItem[] moved = new MediaItem[rows.length];
+        for (int i = 0; i < rows.length; i++) moved[i] = this.playlist.get(rows[i]);
+
+        if (rows.length == 1) this.playlist.remove(rows[0]);
+        else {
+            //Close up the gaps in one pass rather than shifting the rest of the playlist for every row
+            int kept = 0;
+            int next = 0;
+            for (int i = 0; i < this.playlist.size(); i++) {
+                if (next < rows.length && rows[next] == i) next++;
+                else this.playlist.set(kept++, this.playlist.get(i));
+            }
+            this.playlist.subList(kept, this.playlist.size()).clear();
+        }
+        fireRowsDeleted(this.playlistView, rows);
+
+        for (MediaItem item : moved) {
+            int position = this.positionOf(item);
+            //Media that has left the library since the editor opened is just dropped
+            if (position == -1 || this.others.get(position)) continue;
+            this.others.set(position);
+            this.otherRows.add(position, 1);
+            //A single row is inserted where it belongs, many rows are quicker to redraw all at once
+            if (moved.length == 1) {
+                int row = this.otherRows.rank(position);
+                this.otherView.fireTableRowsInserted(row, row);
+            }
+        }
+        if (moved.length > 1) this.otherView.fireTableDataChanged();
+    }
+
+    /**
+     * Gets where media is in the library
+     * @param item the media item
+     * @return its position in the library, -1 if it isn't in the library
+     */
+    private int positionOf(MediaItem item) {
+        int ordinal = item.getOrdinal();
+        if (ordinal < 0 || ordinal >= this.positions.length) return -1;
+        int position = this.positions[ordinal];
+        return position != -1 && this.library[position] == item ? position : -1;
+    }
+
+    /**
+     * Tells a table rows have been deleted, as one event for each run of rows next to each other.
+     * The runs are given from the last to the first so the rows of the runs still to come don't move
+     * @param table the table the rows were deleted from
+     * @param rows the deleted rows, sorted
+     */
+    private static void fireRowsDeleted(AbstractTableModel table, int[] rows) {
+        int end = rows.length - 1;
+        while (end >= 0) {
+            int start = end;
+            while (start > 0 && rows[start - 1] == rows[start] - 1) start--;
+            table.fireTableRowsDeleted(rows[start], rows[end]);
+            end = start - 1;
+        }
+    }
+
+    /**
+     * Table of the media in the playlist, read straight from the playlist
+     */
+    private class PlaylistView extends AbstractTableModel {
+        /**
+         * @return the number of media items in the playlist
+         */
+        @Override
+        public int getRowCount() {
+            return playlist.size();
+        }
+
+        /**
+         * @return one column, the name of the media
+         */
+        @Override
+        public int getColumnCount() {
+            return 1;
+        }
+
+        /**
+         * @param column index of the column
+         * @return the heading of the playlist table
+         */
+        @Override
+        public String getColumnName(int column) {
+            return "Playlist";
+        }
+
+        /**
+         * @param row index of the media in the playlist
+         * @param column index of the column
+         * @return the name of the media in the row
+         */
+        @Override
+        public Object getValueAt(int row, int column) {
+            return playlist.get(row).getName();
+        }
+    }
+
+    /**
+     * Table of the library media not in the playlist, each row is looked up in the rank index
+     */
+    private class OtherView extends AbstractTableModel {
+        /**
+         * @return the number of library media items not in the playlist
+         */
+        @Override
+        public int getRowCount() {
+            return otherRows.count();
+        }
+
+        /**
+         * @return one column, the name of the media
+         */
+        @Override
+        public int getColumnCount() {
+            return 1;
+        }
+
+        /**
+         * @param column index of the column
+         * @return the heading of the other media table
+         */
+        @Override
+        public String getColumnName(int column) {
+            return "Other Media";
+        }
+
+        /**
+         * Finds the library position of the row in the rank index
+         * @param row index of the row in the table
+         * @param column index of the column
+         * @return the name of the media in the row
+         */
+        @Override
+        public Object getValueAt(int row, int column) {
+            return library[otherRows.select(row)].getName();
+        }
+    }
+}
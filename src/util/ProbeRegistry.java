@@ -0,0 +1,252 @@
+package util;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Every supported media format, looked up by file extension. The registry decides which files can be added to
+ * the library, what type of media they are and how their metadata is read.
+ * <p>
+ * Each probe is ran on a worker thread and only waited for up to its timeout, so a file that makes a reader hang,
+ * like one on a network drive that has gone away, can't hold up a scan forever. The time every probe takes is
+ * recorded so slow formats can be spotted.
+ * <p>
+ * The timeout only stops the wait, not the read. Blocking file reads ignore interrupts, so a worker stuck on a
+ * hung read stays stuck until the operating system gives up on it. There are only WORKER_THREADS workers, so
+ * at most that many threads can be stuck, and while they all are the probes waiting behind them time out too.
+ * A probe that times out MAX_TIMEOUTS times in a row is paused for PAUSE_MILLIS, and files given to it in
+ * that time are returned as unreadable straight away rather than piling up behind the stuck workers.
+ */
+public class ProbeRegistry {
+    static final int WORKER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors()); //Size of the probe pools
+    private static final int MAX_TIMEOUTS = 3; //Timeouts in a row before a probe is paused
+    private static final long PAUSE_MILLIS = 30000; //How long a probe that keeps timing out is skipped for
+    private static ProbeRegistry defaultRegistry; //Registry shared by the whole application, created when first used
+
+    private final Map<String, MediaProbe> probes; //Probe for each file extension, in lower case without the dot
+    private final Map<MediaProbe, Stats> stats; //Timings of each probe
+    private final ExecutorService workers; //Threads the probes are ran on so they can be timed out
+
+    /**
+     * Timings of a single probe, updated from many probe threads at once
+     */
+    public static class Stats {
+        private final LongAdder count = new LongAdder(); //Number of files probed
+        private final LongAdder nanos = new LongAdder(); //Total time spent probing
+        private final LongAdder failures = new LongAdder(); //Number of files that couldn't be read
+        private final LongAdder timeouts = new LongAdder(); //Number of files that took too long
+        private final LongAdder skipped = new LongAdder(); //Number of files not probed as the probe was paused
+        private final AtomicInteger timeoutsInRow = new AtomicInteger(); //Timeouts since the last probe that finished
+        private volatile long pausedUntil; //Time the probe can be used again after timing out too often
+
+        /**
+         * @return the number of files probed, including ones that failed or timed out
+         */
+        public long getCount() {
+            return this.count.sum();
+        }
+
+        /**
+         * @return the average time taken to probe a file in milliseconds
+         */
+        public double getAverageMillis() {
+            long count = this.count.sum();
+            return count == 0 ? 0 : this.nanos.sum() / 1e6 / count;
+        }
+
+        /**
+         * @return the number of files that couldn't be read
+         */
+        public long getFailures() {
+            return this.failures.sum();
+        }
+
+        /**
+         * @return the number of files that took longer than the timeout
+         */
+        public long getTimeouts() {
+            return this.timeouts.sum();
+        }
+
+        /**
+         * @return the number of files not probed because the probe kept timing out
+         */
+        public long getSkipped() {
+            return this.skipped.sum();
+        }
+    }
+
+    /**
+     * Creates a registry with the built in probes and any probes found on the class path
+     */
+    public ProbeRegistry() {
+        this.probes = new HashMap<>();
+        this.stats = new LinkedHashMap<>();
+        //The same size as the probe pools so every probe thread can have a worker, but a dead drive can't make
+        //it start a new thread for every file. Daemon so a hung probe never stops the application closing
+        this.workers = Executors.newFixedThreadPool(WORKER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "probe-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.register(new ImageProbe());
+        this.register(new AudioProbe());
+        this.register(new VideoProbe());
+
+        //Probes from other jars are registered after the built in ones so they can replace them
+        Iterator<MediaProbe> found = ServiceLoader.load(MediaProbe.class).iterator();
+        while (true) {
+            try {
+                if (!found.hasNext()) break;
+                this.register(found.next());
+            } catch (ServiceConfigurationError e) {
+                //A probe that can't be created is left out rather than stopping the application starting
+            }
+        }
+    }
+
+    /**
+     * @return the registry used by the application
+     */
+    public static synchronized ProbeRegistry getDefault() {
+        if (defaultRegistry == null) defaultRegistry = new ProbeRegistry();
+        return defaultRegistry;
+    }
+
+    /**
+     * Adds a probe for its file extensions, replacing any probe already registered for them.
+     * Should be called before any media is loaded as the registry isn't safe to change while probing
+     * @param probe the probe to add
+     */
+    public synchronized void register(MediaProbe probe) {
+        for (String extension : probe.getExtensions()) {
+            this.probes.put(extension.toLowerCase(Locale.ROOT), probe);
+        }
+        this.stats.putIfAbsent(probe, new Stats());
+    }
+
+    /**
+     * Gets the probe for a file from its extension
+     * @param name the file name or path
+     * @return the probe, null if the file type isn't supported
+     */
+    public MediaProbe probeFor(String name) {
+        return this.probes.get(extensionOf(name));
+    }
+
+    /**
+     * @param name the file name or path
+     * @return true if the file type is supported
+     */
+    public boolean isSupported(String name) {
+        return this.probeFor(name) != null;
+    }
+
+    /**
+     * Gets the type of media a file is from its extension
+     * @param name the file name or path
+     * @return the type such as Image, Audio or Video, Unknown if it isn't supported
+     */
+    public String typeOf(String name) {
+        MediaProbe probe = this.probeFor(name);
+        return probe == null ? "Unknown" : probe.getType();
+    }
+
+    /**
+     * @return every supported file extension, sorted, for file choosers
+     */
+    public String[] getExtensions() {
+        String[] extensions = this.probes.keySet().toArray(new String[0]);
+        Arrays.sort(extensions);
+        return extensions;
+    }
+
+    /**
+     * Reads the metadata of a file with its probe, giving up once the probe's timeout has passed
+     * @param file the media file
+     * @return the metadata, or the probe's unreadable metadata if it failed or timed out
+     */
+    public MediaProbe.Metadata probe(File file) {
+        MediaProbe probe = this.probeFor(file.getName());
+        if (probe == null) return new MediaProbe.Metadata("Unknown", 0);
+        Stats stats = this.stats.get(probe);
+        //Paused after timing out too often, waiting would only queue behind the workers already stuck
+        if (System.currentTimeMillis() < stats.pausedUntil) {
+            stats.skipped.increment();
+            return probe.unreadable();
+        }
+
+        long start = System.nanoTime();
+        if (probe.getTimeoutMillis() <= 0) {
+            //No timeout, so there is no need to move to a worker thread
+            try {
+                return probe.probe(file);
+            } catch (Exception e) {
+                stats.failures.increment();
+                return probe.unreadable();
+            } finally {
+                stats.count.increment();
+                stats.nanos.add(System.nanoTime() - start);
+            }
+        }
+
+        Future<MediaProbe.Metadata> result = this.workers.submit(() -> probe.probe(file));
+        try {
+            MediaProbe.Metadata metadata = result.get(probe.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+            stats.timeoutsInRow.set(0);
+            return metadata;
+        } catch (TimeoutException e) {
+            //Stop waiting, the worker is interrupted in case the reader checks for it
+            result.cancel(true);
+            stats.timeouts.increment();
+            if (stats.timeoutsInRow.incrementAndGet() >= MAX_TIMEOUTS) {
+                stats.pausedUntil = System.currentTimeMillis() + PAUSE_MILLIS;
+            }
+            return probe.unreadable();
+        } catch (InterruptedException e) {
+            //The thread waiting was cancelled, so pass that on and stop the probe
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            return probe.unreadable();
+        } catch (Exception e) {
+            //The probe finished, even though it failed, so the workers aren't stuck
+            stats.timeoutsInRow.set(0);
+            stats.failures.increment();
+            return probe.unreadable();
+        } finally {
+            stats.count.increment();
+            stats.nanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Gets the timings of every probe, for showing to the user
+     * @return the stats of each probe keyed by its media type and class name
+     */
+    public synchronized Map<String, Stats> getStats() {
+        Map<String, Stats> named = new LinkedHashMap<>();
+        for (Map.Entry<MediaProbe, Stats> entry : this.stats.entrySet()) {
+            MediaProbe probe = entry.getKey();
+            String name = probe.getClass().getSimpleName();
+            if (name.isEmpty()) name = probe.getClass().getName(); //Anonymous probes have no simple name
+            named.put(probe.getType() + " (" + name + ")", entry.getValue());
+        }
+        return named;
+    }
+
+    /**
+     * Gets the extension of a file name
+     * @param name the file name or path
+     * @return the text after the last dot in lower case, empty if there isn't one
+     */
+    private static String extensionOf(String name) {
+        int dot = name.lastIndexOf('.');
+        //A dot before the last separator is part of a folder name, not the extension
+        if (dot == -1 || dot < name.lastIndexOf(File.separatorChar) || dot < name.lastIndexOf('/')) return "";
+        return name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,83 @@
+package util;
+
+import java.util.BitSet;
+
+/**
+ * A set of positions that can be turned into table rows and back quickly, stored as a Fenwick tree.
+ * <p>
+ * Each position is counted once if it is in the set. The tree stores running counts so the row of a position
+ * (how many positions before it are in the set) and the position of a row can both be found in O(log n),
+ * and a position can be added or taken out in O(log n) without moving any of the others.
+ */
+class RankIndex {
+    private final int[] tree; //Fenwick tree of the counts, tree[i] covers the positions i - (i & -i) to i - 1
+    private int count; //Number of positions in the set
+
+    /**
+     * Creates an index holding some positions, built in a single pass
+     * @param set the positions in the set
+     * @param size the number of positions that can be in the set
+     */
+    RankIndex(BitSet set, int size) {
+        this.tree = new int[size + 1];
+        for (int i = set.nextSetBit(0); i >= 0 && i < size; i = set.nextSetBit(i + 1)) {
+            this.tree[i + 1] = 1;
+            this.count++;
+        }
+        //Push each count up to its parent so every node holds the total of the positions it covers
+        for (int i = 1; i <= size; i++) {
+            int parent = i + (i & -i);
+            if (parent <= size) this.tree[parent] += this.tree[i];
+        }
+    }
+
+    /**
+     * @return the number of positions in the set
+     */
+    int count() {
+        return this.count;
+    }
+
+    /**
+     * Adds a position to the set or takes it out, it must not already be in or out of the set
+     * @param position the position
+     * @param delta 1 to add the position, -1 to take it out
+     */
+    void add(int position, int delta) {
+        for (int i = position + 1; i < this.tree.length; i += i & -i) {
+            this.tree[i] += delta;
+        }
+        this.count += delta;
+    }
+
+    /**
+     * Counts the positions in the set before a position
+     * @param position the position
+     * @return the row the position is at, if it is in the set
+     */
+    int rank(int position) {
+        int total = 0;
+        for (int i = position; i > 0; i -= i & -i) {
+            total += this.tree[i];
+        }
+        return total;
+    }
+
+    /**
+     * Finds the position at a row by walking down the tree from the largest power of two
+     * @param row the row, between 0 and count - 1
+     * @return the position at that row
+     */
+    int select(int row) {
+        int position = 0;
+        for (int step = Integer.highestOneBit(this.tree.length - 1); step > 0; step >>= 1) {
+            int next = position + step;
+            //If fewer rows than wanted are up to next then the row is after it
+            if (next < this.tree.length && this.tree[next] <= row) {
+                position = next;
+                row -= this.tree[next];
+            }
+        }
+        return position;
+    }
+}
@@ -0,0 +1,320 @@
+package util;
+
+import java.util.*;
+
+/**
+ * Index of every three character sequence (trigram) in the paths of the media being managed, used to find
+ * the media whose path contains some text without checking every path. Paths include the file name so
+ * searching matches names and folders alike. Searches ignore case.
+ * <p>
+ * Each media item is given an id in the order it is added, and each trigram keeps a sorted list of the ids
+ * with it in their path. A search intersects the lists for its trigrams and only checks the media left,
+ * shorter searches join the lists of the trigrams that contain the text instead. Ids only go up, so the
+ * results come out in the order of the media list without sorting. Removed media leaves its id in the
+ * lists until enough has been removed that rebuilding the index is worth it.
+ * <p>
+ * The id of each media item is looked up by its ordinal in a plain int array, so the FileManager has to give
+ * media its ordinal before adding it here.
+ */
+public class SearchIndex {
+    private static final char EDGE = '\0'; //Added to both ends of a path so one and two character searches have trigrams
+    private static final int MIN_REBUILD = 1024; //Removed ids are only cleared out once there are at least this many
+
+    private final GramMap grams; //Ids of the media with each trigram in their path
+    private int[] ids; //Id of the media item with each ordinal, -1 if it isn't in the index
+    private MediaItem[] items; //Media item for each id, null once it has been removed
+    private int nextId; //Id given to the next media item added
+    private int removed; //Number of ids whose media has been removed
+
+    /**
+     * Growable sorted list of ids, kept as a plain int array so millions of entries stay small
+     */
+    private static class IdList {
+        private int[] ids = new int[4];
+        private int size;
+
+        private void add(int id) {
+            if (this.size == this.ids.length) this.ids = Arrays.copyOf(this.ids, this.size * 2);
+            this.ids[this.size++] = id;
+        }
+    }
+
+    /**
+     * Hash map from packed trigrams to their id lists. Every path adds dozens of trigrams, so keeping the keys
+     * as plain longs saves boxing each one, which would otherwise be most of the garbage made while indexing
+     */
+    private static class GramMap {
+        private static final long EMPTY = -1; //Marks an unused slot, no packed trigram is negative
+        private long[] keys;
+        private IdList[] values;
+        private int size;
+
+        private GramMap() {
+            this.clear();
+        }
+
+        /**
+         * @param gram the packed trigram
+         * @return the list for the trigram, null if no media has it
+         */
+        private IdList get(long gram) {
+            int mask = this.keys.length - 1;
+            for (int slot = hash(gram) & mask; this.keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+                if (this.keys[slot] == gram) return this.values[slot];
+            }
+            return null;
+        }
+
+        /**
+         * @param gram the packed trigram
+         * @return the list for the trigram, added empty if no media had it yet
+         */
+        private IdList getOrAdd(long gram) {
+            //Keep at most half the slots used so the probing stays short
+            if (this.size * 2 >= this.keys.length) this.resize();
+            int mask = this.keys.length - 1;
+            int slot = hash(gram) & mask;
+            for (; this.keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+                if (this.keys[slot] == gram) return this.values[slot];
+            }
+            this.keys[slot] = gram;
+            this.size++;
+            return this.values[slot] = new IdList();
+        }
+
+        private void clear() {
+            this.keys = new long[1024];
+            Arrays.fill(this.keys, EMPTY);
+            this.values = new IdList[1024];
+            this.size = 0;
+        }
+
+        private void resize() {
+            long[] oldKeys = this.keys;
+            IdList[] oldValues = this.values;
+            this.keys = new long[oldKeys.length * 2];
+            Arrays.fill(this.keys, EMPTY);
+            this.values = new IdList[oldKeys.length * 2];
+            int mask = this.keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == EMPTY) continue;
+                int slot = hash(oldKeys[i]) & mask;
+                while (this.keys[slot] != EMPTY) slot = (slot + 1) & mask;
+                this.keys[slot] = oldKeys[i];
+                this.values[slot] = oldValues[i];
+            }
+        }
+
+        private static int hash(long gram) {
+            long mixed = gram * 0x9E3779B97F4A7C15L;
+            return (int) (mixed ^ (mixed >>> 32));
+        }
+    }
+
+    /**
+     * Creates an empty index
+     */
+    public SearchIndex() {
+        this.grams = new GramMap();
+        this.ids = new int[16];
+        Arrays.fill(this.ids, -1);
+        this.items = new MediaItem[16];
+    }
+
+    /**
+     * Adds a media item to the index, media has to be added in the same order as the media list
+     * @param item the media item to add, which must already have its ordinal
+     */
+    void add(MediaItem item) {
+        int ordinal = item.getOrdinal();
+        if (ordinal < 0) throw new IllegalArgumentException("Media has to be given an ordinal before it is indexed");
+        if (this.nextId == this.items.length) this.items = Arrays.copyOf(this.items, this.nextId * 2);
+        if (ordinal >= this.ids.length) {
+            int oldLength = this.ids.length;
+            this.ids = Arrays.copyOf(this.ids, Math.max(oldLength * 2, ordinal + 1));
+            Arrays.fill(this.ids, oldLength, this.ids.length, -1);
+        }
+        int id = this.nextId++;
+        this.items[id] = item;
+        this.ids[ordinal] = id;
+        for (long gram : gramsOf(EDGE + textOf(item) + EDGE)) {
+            this.grams.getOrAdd(gram).add(id);
+        }
+    }
+
+    /**
+     * Removes a media item from the index
+     * @param item the media item to remove
+     */
+    void remove(MediaItem item) {
+        int id = this.idOf(item);
+        if (id == -1) return;
+        this.ids[item.getOrdinal()] = -1;
+        //Leave the id in the trigram lists, searches skip ids without a media item
+        this.items[id] = null;
+        this.removed++;
+        //Rebuild once more ids have been removed than are still in use
+        if (this.removed >= MIN_REBUILD && this.removed > this.nextId - this.removed) this.rebuild();
+    }
+
+    /**
+     * Removes every media item from the index
+     */
+    void clear() {
+        this.grams.clear();
+        Arrays.fill(this.ids, -1);
+        this.items = new MediaItem[16];
+        this.nextId = 0;
+        this.removed = 0;
+    }
+
+    /**
+     * Finds every media item whose path contains some text, ignoring case
+     * @param text the text to search for
+     * @return the matching media items in the order of the media list
+     */
+    public List<MediaItem> search(String text) {
+        String query = text.toLowerCase(Locale.ROOT);
+        List<MediaItem> results = new ArrayList<>();
+        if (query.length() >= 3) {
+            //Only media with every trigram of the search can contain it, so start from the rarest trigram
+            List<IdList> lists = new ArrayList<>();
+            for (long gram : gramsOf(query)) {
+                IdList list = this.grams.get(gram);
+                if (list == null) return results; //No media has this trigram so nothing can match
+                lists.add(list);
+            }
+            lists.sort(Comparator.comparingInt(list -> list.size));
+            int[] candidates = Arrays.copyOf(lists.get(0).ids, lists.get(0).size);
+            int count = candidates.length;
+            for (int i = 1; i < lists.size() && count > 0; i++) count = intersect(candidates, count, lists.get(i));
+            //A three character search is a single trigram, so every candidate already contains it
+            boolean exact = query.length() == 3;
+            for (int i = 0; i < count; i++) this.check(candidates[i], exact ? null : query, results);
+        } else {
+            //Too short to have a trigram of its own, so join the lists of every trigram containing it.
+            //The bit set removes ids that are in more than one list and gives them back in order.
+            //The trigrams contain the search itself, so the candidates don't need checking
+            BitSet candidates = new BitSet(this.nextId);
+            for (int slot = 0; slot < this.grams.keys.length; slot++) {
+                long gram = this.grams.keys[slot];
+                if (gram == GramMap.EMPTY || !decode(gram).contains(query)) continue;
+                IdList list = this.grams.values[slot];
+                for (int i = 0; i < list.size; i++) candidates.set(list.ids[i]);
+            }
+            for (int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+                this.check(id, null, results);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @param item a media item
+     * @return true if the item is in the index, so it hasn't been removed from the library
+     */
+    boolean contains(MediaItem item) {
+        return this.idOf(item) != -1;
+    }
+
+    /**
+     * Gets the id of a media item from its ordinal
+     * @param item a media item
+     * @return its id, -1 if it isn't in the index
+     */
+    private int idOf(MediaItem item) {
+        int ordinal = item.getOrdinal();
+        if (ordinal < 0 || ordinal >= this.ids.length) return -1;
+        int id = this.ids[ordinal];
+        //Check it is the same item, media from a library that was open before can have the same ordinal
+        return id != -1 && this.items[id] == item ? id : -1;
+    }
+
+    /**
+     * Checks a single media item against a search without looking anything up in the index
+     * @param item the media item
+     * @param text the text to search for, case is ignored
+     * @return true if the path of the item contains the text
+     */
+    static boolean matches(MediaItem item, String text) {
+        return textOf(item).contains(text.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Adds a candidate to the results if its media is still in the index and its path really contains the search.
+     * Having the trigrams doesn't mean they are next to each other, so longer searches have to be checked
+     * @param id id of the candidate
+     * @param query the search in lower case, null if the candidate is known to contain it
+     * @param results the results to add to
+     */
+    private void check(int id, String query, List<MediaItem> results) {
+        MediaItem item = this.items[id];
+        if (item != null && (query == null || textOf(item).contains(query))) results.add(item);
+    }
+
+    /**
+     * Keeps only the ids that are also in another list, both are sorted so they are walked through together
+     * @param ids the ids to filter, the ids kept are moved to the front
+     * @param count number of ids in use at the start of the array
+     * @param other the list to intersect with
+     * @return the number of ids kept
+     */
+    private static int intersect(int[] ids, int count, IdList other) {
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < count && j < other.size; i++) {
+            while (j < other.size && other.ids[j] < ids[i]) j++;
+            if (j < other.size && other.ids[j] == ids[i]) ids[kept++] = ids[i];
+        }
+        return kept;
+    }
+
+    /**
+     * Indexes the remaining media again from scratch to clear out the ids of removed media
+     */
+    private void rebuild() {
+        MediaItem[] remaining = Arrays.copyOf(this.items, this.nextId);
+        this.clear();
+        for (MediaItem item : remaining) {
+            if (item != null) this.add(item);
+        }
+    }
+
+    /**
+     * Gets the text of a media item that is searched
+     * @param item the media item
+     * @return the path of the media in lower case
+     */
+    private static String textOf(MediaItem item) {
+        return item.getPath().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Gets every trigram in some text, each packed into a long as three 16 bit characters
+     * @param text the text to split
+     * @return the distinct trigrams in the text, sorted
+     */
+    private static long[] gramsOf(String text) {
+        int count = Math.max(0, text.length() - 2);
+        long[] grams = new long[count];
+        for (int i = 0; i < count; i++) {
+            grams[i] = ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+        }
+        //Sorting puts repeats next to each other so they can be dropped without a set
+        Arrays.sort(grams);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || grams[i] != grams[distinct - 1]) grams[distinct++] = grams[i];
+        }
+        return Arrays.copyOf(grams, distinct);
+    }
+
+    /**
+     * Unpacks a trigram made by gramsOf
+     * @param gram the packed trigram
+     * @return the three characters of the trigram
+     */
+    private static String decode(long gram) {
+        return new String(new char[] { (char) (gram >>> 32), (char) (gram >>> 16), (char) gram });
+    }
+}
@@ -0,0 +1,225 @@
+package util;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Makes small previews of image media for the media table. Thumbnails are made on background threads by
+ * reading the image at a reduced resolution, so the full size image is never decoded, and are saved in the
+ * users home folder so they don't have to be made again next time. The most recently used thumbnails are also
+ * kept in memory, up to a fixed number of bytes.
+ * <p>
+ * Every function apart from the background decoding is called on the Swing event thread. Thumbnails in memory
+ * are found by their media item, so drawing a cell never touches the disk. The key a thumbnail is saved on the
+ * disk under includes the modified time of the image, so it is only worked out on the background threads.
+ */
+public class ThumbnailCache {
+    public static final int SIZE = 48; //Width and height thumbnails are scaled to fit in
+    private static final long MAX_MEMORY_BYTES = 16L << 20; //Pixel bytes of thumbnails kept in memory
+    private static final ImageIcon NONE = new ImageIcon(); //Kept for images that couldn't be read so they aren't tried again
+    private static final long NONE_BYTES = 128; //Counted for each image that couldn't be read, roughly its map entry
+
+    private final Consumer<MediaItem> onLoaded; //Called whenever a thumbnail has been made so its row can redraw
+    private final File folder; //Folder the thumbnails are saved in
+    private final ExecutorService pool; //Threads the thumbnails are made on
+    private final LinkedHashMap<MediaItem, ImageIcon> memory; //Thumbnails by media item, least recently used first
+    private final Map<MediaItem, Future<?>> pending; //Thumbnails being made by media item
+    private long memoryBytes; //Bytes counted for the thumbnails in memory, see bytesOf
+
+    /**
+     * Creates the cache, thumbnails are saved in a folder in the users home folder
+     * @param onLoaded called on the event thread with the media item whenever a thumbnail has been made
+     */
+    public ThumbnailCache(Consumer<MediaItem> onLoaded) {
+        this.onLoaded = onLoaded;
+        this.folder = new File(System.getProperty("user.home"), ".media_library_organiser" + File.separator + "thumbnails");
+        //Access order so iterating starts from the thumbnail that was used longest ago
+        this.memory = new LinkedHashMap<>(256, 0.75f, true);
+        this.pending = new HashMap<>();
+
+        //Decoding is mostly waiting on the disk, two threads keep it busy without fighting the probe pool
+        this.pool = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "thumbnail");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Gets the thumbnail of a media item, starting to make it in the background if it isn't in memory
+     * @param item the media item
+     * @return the thumbnail, null if the media isn't an image or the thumbnail isn't ready yet
+     */
+    public Icon get(MediaItem item) {
+        if (!item.getType().equals("Image")) return null;
+        ImageIcon icon = this.memory.get(item);
+        if (icon != null) return icon == NONE ? null : icon;
+
+        if (!this.pending.containsKey(item)) {
+            this.pending.put(item, this.pool.submit(() -> {
+                //The path and modified time are only looked at here, off the event thread
+                File file = new File(item.getPath());
+                BufferedImage image = this.load(file, keyOf(file));
+                SwingUtilities.invokeLater(() -> this.finished(item, image));
+            }));
+        }
+        return null;
+    }
+
+    /**
+     * @param item a media item
+     * @return true if the thumbnail of the item is being made
+     */
+    public boolean isPending(MediaItem item) {
+        return this.pending.containsKey(item);
+    }
+
+    /**
+     * Cancels the thumbnails still being made for media that isn't on screen anymore
+     * @param visible the media items currently shown in the table
+     */
+    public void retain(Collection<MediaItem> visible) {
+        Set<MediaItem> keep = new HashSet<>(visible);
+        Iterator<Map.Entry<MediaItem, Future<?>>> pending = this.pending.entrySet().iterator();
+        while (pending.hasNext()) {
+            Map.Entry<MediaItem, Future<?>> entry = pending.next();
+            if (keep.contains(entry.getKey())) continue;
+            entry.getValue().cancel(true);
+            pending.remove();
+        }
+    }
+
+    /**
+     * Stores a thumbnail that has been made in memory, ran on the event thread
+     * @param item the media item the thumbnail is for
+     * @param image the thumbnail, null if the image couldn't be read
+     */
+    private void finished(MediaItem item, BufferedImage image) {
+        //Cancelled after it finished, it will be made again from the disk if it comes back on screen
+        if (this.pending.remove(item) == null) return;
+
+        //Images that couldn't be read count towards the limit too, so a folder of them can't fill the memory
+        ImageIcon icon = image == null ? NONE : new ImageIcon(image);
+        this.memory.put(item, icon);
+        this.memoryBytes += bytesOf(icon);
+        //Drop the least recently used thumbnails until the memory used is back under the limit
+        Iterator<ImageIcon> oldest = this.memory.values().iterator();
+        while (this.memoryBytes > MAX_MEMORY_BYTES && oldest.hasNext()) {
+            this.memoryBytes -= bytesOf(oldest.next());
+            oldest.remove();
+        }
+        this.onLoaded.accept(item);
+    }
+
+    /**
+     * Gets a thumbnail from the disk cache or makes it from the image, ran on a background thread
+     * @param file the image file
+     * @param key the key of the thumbnail
+     * @return the thumbnail, null if the image couldn't be read
+     */
+    private BufferedImage load(File file, String key) {
+        File saved = new File(this.folder, key + ".png");
+        try {
+            if (saved.exists()) {
+                BufferedImage image = ImageIO.read(saved);
+                if (image != null) return image;
+            }
+        } catch (IOException e) {
+            //A damaged thumbnail is just made again
+        }
+
+        BufferedImage image;
+        try {
+            image = decode(file);
+        } catch (IOException e) {
+            return null;
+        }
+        if (image == null || Thread.currentThread().isInterrupted()) return image;
+
+        try {
+            //Saving is only to speed up next time, so a failure doesn't matter
+            if (this.folder.isDirectory() || this.folder.mkdirs()) ImageIO.write(image, "png", saved);
+        } catch (IOException e) {
+            saved.delete();
+        }
+        return image;
+    }
+
+    /**
+     * Reads an image at a reduced resolution and scales it to fit the thumbnail size. Subsampling skips
+     * rows and columns while decoding, so a large photo is never held in memory at full size
+     * @param file the image file
+     * @return the thumbnail, null if no reader supports the file
+     * @throws IOException if the file couldn't be read
+     */
+    private static BufferedImage decode(File file) throws IOException {
+        BufferedImage image;
+        try (ImageInputStream stream = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = stream == null ? null : ImageIO.getImageReaders(stream);
+            if (readers == null || !readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                //Only read every nth pixel so the decoded image is at most about twice the thumbnail size
+                int step = Math.max(1, Math.max(reader.getWidth(0), reader.getHeight(0)) / (SIZE * 2));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                image = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        //Scale what was read down to the thumbnail size, keeping the shape of the image
+        double scale = Math.min(1, (double) SIZE / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        BufferedImage thumbnail = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = thumbnail.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, width, height, null);
+        graphics.dispose();
+        return thumbnail;
+    }
+
+    /**
+     * Gets the key a thumbnail is stored under, which changes whenever the image is modified
+     * @param file the image file
+     * @return a hash of the path and modified time of the file
+     */
+    private static String keyOf(File file) {
+        String text = file.getPath() + "|" + file.lastModified();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            //Every Java platform has SHA-1, but a plain hash still works as a key
+            return Integer.toHexString(text.hashCode());
+        }
+    }
+
+    /**
+     * @return the bytes used by the pixels of a thumbnail, or the fixed amount counted for an image that
+     * couldn't be read
+     */
+    private static long bytesOf(ImageIcon icon) {
+        if (icon == NONE) return NONE_BYTES;
+        return (long) icon.getIconWidth() * icon.getIconHeight() * 4;
+    }
+}
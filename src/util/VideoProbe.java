@@ -0,0 +1,37 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Reads the resolution and length of MP4 videos from their headers
+ */
+class VideoProbe implements MediaProbe {
+    /**
+     * @return Video, the type shown in the table for videos
+     */
+    @Override
+    public String getType() {
+        return "Video";
+    }
+
+    /**
+     * @return the extensions of MP4 videos
+     */
+    @Override
+    public String[] getExtensions() {
+        return new String[] { "mp4" };
+    }
+
+    /**
+     * Reads the movie and track headers of the video, see Mp4Reader
+     * @param file the video file
+     * @return the resolution and length of the video
+     * @throws IOException if the file couldn't be read or isn't an MP4 file
+     */
+    @Override
+    public Metadata probe(File file) throws IOException {
+        Mp4Reader video = new Mp4Reader(file);
+        return new Metadata(video.getResolution(), video.getLength());
+    }
+}